@@ -0,0 +1,111 @@
+package net.matteolandi.plugins.livedocumentationfetcher.benchmarks;
+
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.json.Json;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.services.drive.Drive;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The same endpoints as {@link DriveStub}, served over HTTP on the loopback
+ * interface, each reply sent latencyMillis after its request:  clients block
+ * on sockets, as they do against Drive, which is what execution engines
+ * differ in handling.
+ *
+ * Replies are delayed without holding on to a thread, so that the server
+ * adds the same handful of platform threads whatever the concurrency.
+ */
+public class DriveServer implements Closeable {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final HttpServer server;
+    private final ExecutorService dispatcher;
+    private final ScheduledExecutorService replier;
+    private final byte[] document;
+    private final byte[] fileList;
+    private final long latencyMillis;
+
+    public DriveServer(final int listSize, final int documentSize, final long latencyMillis) throws IOException {
+        this.dispatcher = Executors.newFixedThreadPool(2, newDaemonThreadFactory());
+        this.replier = Executors.newScheduledThreadPool(2, newDaemonThreadFactory());
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        this.document = new byte[documentSize];
+        Arrays.fill(document, (byte) 'x');
+        this.fileList = DriveStub.getFileList(listSize, getUrl() + "export/").getBytes(UTF_8);
+        this.latencyMillis = latencyMillis;
+
+        server.setExecutor(dispatcher);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                final boolean export = exchange.getRequestURI().getPath().startsWith("/export/");
+                replier.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        reply(exchange, export ? DriveStub.EXPORT_MIME_TYPE : Json.MEDIA_TYPE,
+                                export ? document : fileList);
+                    }
+                }, DriveServer.this.latencyMillis, TimeUnit.MILLISECONDS);
+            }
+        });
+        server.start();
+    }
+
+    public String getUrl() {
+        return String.format("http://%s:%d/", server.getAddress().getHostString(), server.getAddress().getPort());
+    }
+
+    public Drive newDrive(final HttpTransport httpTransport) {
+        return new Drive.Builder(httpTransport, new JacksonFactory(), null)
+                .setRootUrl(getUrl())
+                .setApplicationName("DriveServer")
+                .build();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        replier.shutdownNow();
+        dispatcher.shutdownNow();
+    }
+
+    private static void reply(final HttpExchange exchange, final String contentType, final byte[] content) {
+        try {
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            exchange.sendResponseHeaders(200, content.length);
+            final OutputStream body = exchange.getResponseBody();
+            body.write(content);
+            body.close();
+        } catch (IOException e) {
+            // The client went away
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static ThreadFactory newDaemonThreadFactory() {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "drive-server");
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+}
@@ -0,0 +1,78 @@
+package net.matteolandi.plugins.livedocumentationfetcher.benchmarks;
+
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.json.Json;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import com.google.api.services.drive.Drive;
+
+import java.util.Arrays;
+
+/**
+ * In-process imitation of the Drive v2 endpoints used by the plugin:  every
+ * files.list request (look-ups and listings alike) returns the same page of
+ * synthetic Google Docs, and the export link of each of them returns a
+ * document of the configured size.
+ *
+ * Nothing goes through the network, so what gets measured is the plugin
+ * (and the client library) only.
+ */
+public class DriveStub extends MockHttpTransport {
+    public static final String EXPORT_MIME_TYPE = "text/html";
+    private static final String EXPORT_URL = "http://drive.stub/export/";
+
+    private final byte[] document;
+    private final String fileList;
+
+    public DriveStub(final int listSize, final int documentSize) {
+        this.document = new byte[documentSize];
+        Arrays.fill(document, (byte) 'x');
+        this.fileList = getFileList(listSize, EXPORT_URL);
+    }
+
+    public Drive newDrive() {
+        return new Drive.Builder(this, new JacksonFactory(), null).setApplicationName("DriveStub").build();
+    }
+
+    @Override
+    public LowLevelHttpRequest buildRequest(final String method, final String url) {
+        return new MockLowLevelHttpRequest(url) {
+            @Override
+            public LowLevelHttpResponse execute() {
+                if (url.startsWith(EXPORT_URL)) {
+                    return new MockLowLevelHttpResponse()
+                            .setContentType(EXPORT_MIME_TYPE)
+                            .setContent(document);
+                }
+                return new MockLowLevelHttpResponse()
+                        .setContentType(Json.MEDIA_TYPE)
+                        .setContent(fileList);
+            }
+        };
+    }
+
+    public static String getTitle(final int index) {
+        return String.format("Document %d", index);
+    }
+
+    /**
+     * @param exportUrl prefix of the export links, followed by the file id
+     */
+    static String getFileList(final int size, final String exportUrl) {
+        final StringBuilder builder = new StringBuilder("{\"kind\": \"drive#fileList\", \"items\": [");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(String.format("{\"kind\": \"drive#file\", \"id\": \"doc-%d\", \"title\": \"%s\", "
+                    + "\"mimeType\": \"application/vnd.google-apps.document\", "
+                    + "\"modifiedDate\": \"2014-06-01T10:00:00.000Z\", \"etag\": \"\\\"etag-%d\\\"\", "
+                    + "\"exportLinks\": {\"%s\": \"%sdoc-%d\"}}",
+                    i, getTitle(i), i, EXPORT_MIME_TYPE, exportUrl, i));
+        }
+        return builder.append("]}").toString();
+    }
+}
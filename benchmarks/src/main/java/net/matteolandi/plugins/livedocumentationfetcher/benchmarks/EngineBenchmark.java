@@ -0,0 +1,129 @@
+package net.matteolandi.plugins.livedocumentationfetcher.benchmarks;
+
+import com.google.api.client.http.HttpTransport;
+import net.matteolandi.plugins.livedocumentationfetcher.BulkFetcher;
+import net.matteolandi.plugins.livedocumentationfetcher.DocumentDownloader;
+import net.matteolandi.plugins.livedocumentationfetcher.DocumentWriter;
+import net.matteolandi.plugins.livedocumentationfetcher.ExecutionEngine;
+import net.matteolandi.plugins.livedocumentationfetcher.FetchMetrics;
+import net.matteolandi.plugins.livedocumentationfetcher.FetchResult;
+import net.matteolandi.plugins.livedocumentationfetcher.Format;
+import net.matteolandi.plugins.livedocumentationfetcher.Manifest;
+import net.matteolandi.plugins.livedocumentationfetcher.RetryPolicy;
+import net.matteolandi.plugins.livedocumentationfetcher.RetrySettings;
+import net.matteolandi.plugins.livedocumentationfetcher.googledrive.DriveRateLimiter;
+import net.matteolandi.plugins.livedocumentationfetcher.googledrive.GoogleDriveService;
+import net.matteolandi.plugins.livedocumentationfetcher.googledrive.GoogleDriveUtils;
+import net.matteolandi.plugins.livedocumentationfetcher.http.HttpSettings;
+import net.matteolandi.plugins.livedocumentationfetcher.http.HttpTransports;
+import org.apache.maven.plugin.logging.Log;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import rx.functions.Action1;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Time taken by a whole folder fetch, and platform threads used meanwhile,
+ * with each of the {@link ExecutionEngine}s, at high document counts, against
+ * a {@link DriveServer} replying after latencyMillis.
+ *
+ * "virtual-threads" needs Java 21 or later (e.g. java -jar target/benchmarks.jar
+ * -jvm /path/to/java21/bin/java):  on older JVMs its trials fail, instead of
+ * silently measuring the "rx" fallback.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EngineBenchmark {
+    private static final double UNLIMITED_REQUESTS_PER_SECOND = 1e9;
+    private static final int DOCUMENT_SIZE = 4096;
+
+    @Param({ExecutionEngine.RX, ExecutionEngine.VIRTUAL_THREADS})
+    public String engine;
+
+    @Param({"1000", "10000"})
+    public int documents;
+
+    @Param({"32", "256"})
+    public int maxConcurrentDownloads;
+
+    @Param({"20"})
+    public long latencyMillis;
+
+    private final Log log = new QuietLog();
+    private java.io.File outputDirectory;
+    private ExecutionEngine executionEngine;
+    private DriveServer driveServer;
+    private HttpTransport httpTransport;
+    private GoogleDriveService googleDriveService;
+    private RetryPolicy retryPolicy;
+    private DocumentWriter documentWriter;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        outputDirectory = Files.createTempDirectory("engine-benchmark");
+        executionEngine = ExecutionEngine.create(log, engine, maxConcurrentDownloads, false);
+        if (!engine.equals(executionEngine.getName())) {
+            throw new IllegalStateException(String.format("Engine '%s' not supported by Java %s",
+                    engine, System.getProperty("java.version")));
+        }
+        driveServer = new DriveServer(documents, DOCUMENT_SIZE, latencyMillis);
+        final HttpSettings http = new HttpSettings();
+        // Downloads, plus the listing
+        http.maxConnections = maxConcurrentDownloads + 1;
+        httpTransport = HttpTransports.create(http);
+        googleDriveService = new GoogleDriveService(driveServer.newDrive(httpTransport),
+                new GoogleDriveUtils(new DriveRateLimiter(log, UNLIMITED_REQUESTS_PER_SECOND)));
+        retryPolicy = new RetryPolicy(log, new RetrySettings(), new FetchMetrics());
+        documentWriter = new DocumentWriter(65536, false);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        executionEngine.close();
+        httpTransport.shutdown();
+        driveServer.close();
+        Files.deleteRecursively(outputDirectory);
+    }
+
+    @Benchmark
+    public int fetchFolder(final Threads threads) {
+        final FetchMetrics metrics = new FetchMetrics();
+        final Manifest manifest = Manifest.load(log, outputDirectory);
+        final DocumentDownloader documentDownloader = new DocumentDownloader(
+                log, googleDriveService, manifest, executionEngine.getDownloadScheduler(),
+                executionEngine.getIoScheduler(), retryPolicy, documentWriter, null, metrics, 1, Long.MAX_VALUE,
+                null);
+        final BulkFetcher bulkFetcher = new BulkFetcher(log, googleDriveService, documentDownloader,
+                executionEngine.getIoScheduler(), retryPolicy, metrics);
+
+        final AtomicInteger fetched = new AtomicInteger();
+        executionEngine.run(bulkFetcher.fetch("'folder' in parents", outputDirectory, Arrays.asList(Format.HTML)),
+                new Action1<FetchResult>() {
+                    @Override
+                    public void call(FetchResult result) {
+                        fetched.incrementAndGet();
+                    }
+                });
+        threads.sample();
+        return fetched.get();
+    }
+}
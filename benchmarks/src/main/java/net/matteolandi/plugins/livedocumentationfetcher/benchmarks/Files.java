@@ -0,0 +1,32 @@
+package net.matteolandi.plugins.livedocumentationfetcher.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+final class Files {
+    private Files() {
+    }
+
+    static java.io.File createTempDirectory(final String prefix) throws IOException {
+        return java.nio.file.Files.createTempDirectory(prefix).toFile();
+    }
+
+    static void deleteRecursively(final java.io.File directory) throws IOException {
+        java.nio.file.Files.walkFileTree(directory.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                java.nio.file.Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                java.nio.file.Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
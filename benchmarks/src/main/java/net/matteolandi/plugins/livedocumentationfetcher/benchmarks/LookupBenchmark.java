@@ -0,0 +1,61 @@
+package net.matteolandi.plugins.livedocumentationfetcher.benchmarks;
+
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.File;
+import com.google.common.collect.Lists;
+import net.matteolandi.plugins.livedocumentationfetcher.googledrive.DriveRateLimiter;
+import net.matteolandi.plugins.livedocumentationfetcher.googledrive.GoogleDriveUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of a batched title look-up in {@link GoogleDriveUtils}:  query
+ * building, request execution against the stub and parsing of the returned
+ * page.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LookupBenchmark {
+    private static final double UNLIMITED_REQUESTS_PER_SECOND = 1e9;
+
+    @Param({"1", "50", "500"})
+    public int batchSize;
+
+    private Drive drive;
+    private GoogleDriveUtils googleDriveUtils;
+    private List<String> titles;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        drive = new DriveStub(batchSize, 0).newDrive();
+        googleDriveUtils = new GoogleDriveUtils(new DriveRateLimiter(new QuietLog(), UNLIMITED_REQUESTS_PER_SECOND));
+        titles = Lists.newArrayListWithExpectedSize(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            titles.add(DriveStub.getTitle(i));
+        }
+    }
+
+    @Benchmark
+    public Map<String, File> retrieveFilesByTitles() throws IOException {
+        return googleDriveUtils.retrieveFilesByTitles(drive, titles);
+    }
+}
@@ -0,0 +1,106 @@
+package net.matteolandi.plugins.livedocumentationfetcher.benchmarks;
+
+import net.matteolandi.plugins.livedocumentationfetcher.BulkFetcher;
+import net.matteolandi.plugins.livedocumentationfetcher.DocumentDownloader;
+import net.matteolandi.plugins.livedocumentationfetcher.DocumentWriter;
+import net.matteolandi.plugins.livedocumentationfetcher.FetchMetrics;
+import net.matteolandi.plugins.livedocumentationfetcher.Format;
+import net.matteolandi.plugins.livedocumentationfetcher.Manifest;
+import net.matteolandi.plugins.livedocumentationfetcher.RetryPolicy;
+import net.matteolandi.plugins.livedocumentationfetcher.RetrySettings;
+import net.matteolandi.plugins.livedocumentationfetcher.googledrive.DriveRateLimiter;
+import net.matteolandi.plugins.livedocumentationfetcher.googledrive.GoogleDriveService;
+import net.matteolandi.plugins.livedocumentationfetcher.googledrive.GoogleDriveUtils;
+import org.apache.maven.plugin.logging.Log;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Documents per second through the Rx pipeline of the plugin:  a folder
+ * listing fanned out into one download per document, written to disk by
+ * {@link DocumentWriter} and tracked by the {@link Manifest}.
+ *
+ * The manifest is never saved, so every document is downloaded at every
+ * invocation;  after the first one, outputs are found unchanged (i.e. the
+ * steady state of a build whose documents did not change, without the
+ * manifest short-circuit).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PipelineBenchmark {
+    private static final double UNLIMITED_REQUESTS_PER_SECOND = 1e9;
+
+    @Param({"100", "1000"})
+    public int documents;
+
+    @Param({"1024", "65536"})
+    public int documentSize;
+
+    @Param({"1", "8", "32"})
+    public int maxConcurrentDownloads;
+
+    private final Log log = new QuietLog();
+    private java.io.File outputDirectory;
+    private ExecutorService downloadExecutor;
+    private Scheduler downloadScheduler;
+    private GoogleDriveService googleDriveService;
+    private RetryPolicy retryPolicy;
+    private DocumentWriter documentWriter;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        outputDirectory = Files.createTempDirectory("pipeline-benchmark");
+        downloadExecutor = Executors.newFixedThreadPool(maxConcurrentDownloads);
+        downloadScheduler = Schedulers.from(downloadExecutor);
+        googleDriveService = new GoogleDriveService(new DriveStub(documents, documentSize).newDrive(),
+                new GoogleDriveUtils(new DriveRateLimiter(log, UNLIMITED_REQUESTS_PER_SECOND)));
+        retryPolicy = new RetryPolicy(log, new RetrySettings(), new FetchMetrics());
+        documentWriter = new DocumentWriter(65536, false);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        downloadExecutor.shutdownNow();
+        Files.deleteRecursively(outputDirectory);
+    }
+
+    @Benchmark
+    public int fetchFolder(final Throughput throughput) {
+        final FetchMetrics metrics = new FetchMetrics();
+        final Manifest manifest = Manifest.load(log, outputDirectory);
+        final DocumentDownloader documentDownloader = new DocumentDownloader(
+                log, googleDriveService, manifest, downloadScheduler, Schedulers.io(), retryPolicy, documentWriter,
+                null, metrics, 1, Long.MAX_VALUE, null);
+        final BulkFetcher bulkFetcher =
+                new BulkFetcher(log, googleDriveService, documentDownloader, Schedulers.io(), retryPolicy, metrics);
+
+        final int fetched = bulkFetcher.fetch("'folder' in parents", outputDirectory, Arrays.asList(Format.HTML))
+                .count().toBlocking().single();
+        throughput.documents += fetched;
+        throughput.bytes += (long) fetched * documentSize;
+        return fetched;
+    }
+}
@@ -0,0 +1,33 @@
+package net.matteolandi.plugins.livedocumentationfetcher.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Secondary result, reported by JMH next to the primary one:  the largest
+ * number of live platform threads (virtual ones are not counted) seen during
+ * an iteration.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.EVENTS)
+public class Threads {
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+    public long peakThreads;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        THREAD_MX_BEAN.resetPeakThreadCount();
+        peakThreads = 0;
+    }
+
+    public void sample() {
+        peakThreads = Math.max(peakThreads, THREAD_MX_BEAN.getPeakThreadCount());
+    }
+}
@@ -0,0 +1,24 @@
+package net.matteolandi.plugins.livedocumentationfetcher.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Secondary results, reported by JMH as documents/s and bytes/s next to the
+ * primary (per invocation) one.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Throughput {
+    public long documents;
+    public long bytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        documents = 0;
+        bytes = 0;
+    }
+}
@@ -0,0 +1,96 @@
+package net.matteolandi.plugins.livedocumentationfetcher.benchmarks;
+
+import com.google.common.collect.Lists;
+import net.matteolandi.plugins.livedocumentationfetcher.DocumentWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copy throughput of {@link DocumentWriter}:  each invocation writes
+ * {@code concurrency} documents at the same time, alternating between two
+ * contents so that every write actually replaces its destination.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WriteBenchmark {
+    @Param({"1024", "65536", "1048576", "16777216"})
+    public int documentSize;
+
+    @Param({"1", "4", "16"})
+    public int concurrency;
+
+    @Param({"8192", "65536"})
+    public int bufferSize;
+
+    @Param({"false", "true"})
+    public boolean fsync;
+
+    private final byte[][] contents = new byte[2][];
+    private java.io.File directory;
+    private ExecutorService executor;
+    private DocumentWriter documentWriter;
+    private int invocations;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        for (int i = 0; i < contents.length; i++) {
+            contents[i] = new byte[documentSize];
+            Arrays.fill(contents[i], (byte) ('a' + i));
+        }
+        directory = Files.createTempDirectory("write-benchmark");
+        executor = Executors.newFixedThreadPool(concurrency);
+        documentWriter = new DocumentWriter(bufferSize, fsync);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        Files.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public void write(final Throughput throughput) throws Exception {
+        final byte[] content = contents[invocations++ % contents.length];
+        final List<Future<Boolean>> futures = Lists.newArrayListWithExpectedSize(concurrency);
+
+        for (int i = 0; i < concurrency; i++) {
+            final java.io.File destination = new java.io.File(directory, String.format("document-%d.html", i));
+            futures.add(executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws IOException {
+                    return documentWriter.write(new ByteArrayInputStream(content), destination);
+                }
+            }));
+        }
+        for (final Future<Boolean> future : futures) {
+            future.get();
+        }
+        throughput.documents += concurrency;
+        throughput.bytes += (long) concurrency * documentSize;
+    }
+}
@@ -0,0 +1,684 @@
+package net.matteolandi.plugins.livedocumentationfetcher.fakedrive;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local stand-in for the parts of Google Drive (v2) and of its OAuth2 token
+ * server used by the plugin.
+ *
+ * It serves a single folder ({@link #FOLDER_ID}) of synthetic documents and,
+ * with the configured probabilities, replies to document traffic (folder
+ * listings and downloads) with a 5xx or 429 error, drops the connection
+ * halfway through the response, or streams the response slowly.  Downloads
+ * honour byte ranges (Range and If-Range headers), so that dropped ones can
+ * be resumed.  Credential store
+ * traffic (title look-ups, uploads) is never faulted, as the plugin does not
+ * retry its background updates.
+ *
+ * Started by {@link #main(String[])} on daemon threads (it lives as long as
+ * the JVM running the build), with arguments in the form {@code key=value}:
+ *
+ * <ul>
+ * <li>port (default 18080)</li>
+ * <li>documents (default 1000) and documentSize, in bytes (default 4096)</li>
+ * <li>binary: if true, documents are served as stored HTML files (with a
+ * size and a download URL) instead of Google documents to export (default
+ * false)</li>
+ * <li>latencyMillis, added to every reply (default 0)</li>
+ * <li>serverErrorRate, rateLimitRate, dropRate and slowRate (default 0)</li>
+ * <li>slowChunkSize, in bytes (default 512) and slowChunkDelayMillis (default
+ * 10)</li>
+ * <li>seed of the random faults (default 0)</li>
+ * <li>changeIntervalMillis:  if greater than 0, one document after the other
+ * is edited (i.e. gets a new version, showing up in the changes feed) at
+ * this interval (default 0)</li>
+ * <li>images:  if greater than 0, exports come with a style block and
+ * reference one of this many images, served under {@code /images/} and
+ * shared by several documents (default 0)</li>
+ * <li>keyStore: where to create the PKCS12 service account key the plugin
+ * signs its token requests with</li>
+ * </ul>
+ *
+ * {@code GET /stats} replies with the counters of the served requests, in
+ * {@link Properties} format.
+ */
+public class FakeDrive {
+    public static final String FOLDER_ID = "fake-folder";
+    public static final String EXPORT_MIME_TYPE = "text/html";
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String DOCUMENT_MIME_TYPE = "application/vnd.google-apps.document";
+    private static final Pattern TITLE_CLAUSE = Pattern.compile("title = '((?:[^'\\\\]|\\\\.)*)'");
+    private static final Pattern PARENT_CLAUSE = Pattern.compile("'([^']*)' in parents");
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d*)");
+    private static final int SERVER_THREADS = 64;
+    private static final long MODIFIED_TIME = 1388534400000L;
+
+    private final Map<String, String> settings;
+    private final int port;
+    private final int documents;
+    private final int documentSize;
+    private final boolean binary;
+    private final long latencyMillis;
+    private final double serverErrorRate;
+    private final double rateLimitRate;
+    private final double dropRate;
+    private final double slowRate;
+    private final int slowChunkSize;
+    private final long slowChunkDelayMillis;
+    private final long changeIntervalMillis;
+    private final int images;
+    private final Random random;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong exports = new AtomicLong();
+    private final AtomicLong rangeRequests = new AtomicLong();
+    private final AtomicLong contentDrops = new AtomicLong();
+    private final AtomicLong serverErrors = new AtomicLong();
+    private final AtomicLong rateLimits = new AtomicLong();
+    private final AtomicLong drops = new AtomicLong();
+    private final AtomicLong slowStreams = new AtomicLong();
+    private final AtomicLong imageRequests = new AtomicLong();
+    private final AtomicLong authorizedImageRequests = new AtomicLong();
+    private final AtomicLong largestChangeId = new AtomicLong(1);
+    private final AtomicLongArray changeIds;
+
+    private HttpServer server;
+
+    public FakeDrive(final Map<String, String> settings) {
+        this.settings = settings;
+        this.port = Integer.parseInt(get("port", "18080"));
+        this.documents = Integer.parseInt(get("documents", "1000"));
+        this.documentSize = Integer.parseInt(get("documentSize", "4096"));
+        this.binary = Boolean.parseBoolean(get("binary", "false"));
+        this.latencyMillis = Long.parseLong(get("latencyMillis", "0"));
+        this.serverErrorRate = Double.parseDouble(get("serverErrorRate", "0"));
+        this.rateLimitRate = Double.parseDouble(get("rateLimitRate", "0"));
+        this.dropRate = Double.parseDouble(get("dropRate", "0"));
+        this.slowRate = Double.parseDouble(get("slowRate", "0"));
+        this.slowChunkSize = Integer.parseInt(get("slowChunkSize", "512"));
+        this.slowChunkDelayMillis = Long.parseLong(get("slowChunkDelayMillis", "10"));
+        this.changeIntervalMillis = Long.parseLong(get("changeIntervalMillis", "0"));
+        this.images = Integer.parseInt(get("images", "0"));
+        this.random = new Random(Long.parseLong(get("seed", "0")));
+        this.changeIds = new AtomicLongArray(documents);
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final FakeDrive fakeDrive = new FakeDrive(parseArguments(args));
+        final String keyStore = fakeDrive.settings.get("keyStore");
+        if (keyStore != null) {
+            createKeyStore(new File(keyStore));
+        }
+        fakeDrive.start();
+    }
+
+    static Map<String, String> parseArguments(final String[] args) {
+        final Map<String, String> arguments = new LinkedHashMap<String, String>();
+        for (final String arg : args) {
+            final int separator = arg.indexOf('=');
+            if (separator == -1) {
+                throw new IllegalArgumentException(String.format("Expected key=value, got: '%s'", arg));
+            }
+            arguments.put(arg.substring(0, separator).trim(), arg.substring(separator + 1).trim());
+        }
+        return arguments;
+    }
+
+    public static String getTitle(final int index) {
+        return String.format("Document %05d", index);
+    }
+
+    /**
+     * The server (and its threads) is created from a daemon thread, so that
+     * the build is not kept waiting for it to complete.
+     */
+    public void start() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final Thread starter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    server = HttpServer.create(new InetSocketAddress("localhost", port), 256);
+                    server.createContext("/token", new TokenHandler());
+                    server.createContext("/drive/v2/", new DriveHandler());
+                    server.createContext("/upload/drive/v2/", new UploadHandler());
+                    server.createContext("/export/", new ContentHandler());
+                    server.createContext("/download/", new ContentHandler());
+                    server.createContext("/images/", new ImageHandler());
+                    server.createContext("/stats", new StatsHandler());
+                    server.setExecutor(newExecutor());
+                    server.start();
+                } catch (IOException e) {
+                    throw new IllegalStateException(String.format("Cannot start fake Drive on port %d", port), e);
+                } finally {
+                    started.countDown();
+                }
+            }
+        }, "fake-drive-starter");
+        starter.setDaemon(true);
+        starter.start();
+        started.await();
+        if (server == null) {
+            throw new IllegalStateException(String.format("Cannot start fake Drive on port %d", port));
+        }
+        if (changeIntervalMillis > 0) {
+            final Thread editor = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int index = 0; !Thread.currentThread().isInterrupted(); index = (index + 1) % documents) {
+                        sleep(changeIntervalMillis);
+                        edit(index);
+                    }
+                }
+            }, "fake-drive-editor");
+            editor.setDaemon(true);
+            editor.start();
+        }
+        System.out.println(String.format("Fake Drive serving %d documents at: http://localhost:%d/ (%s)",
+                documents, port, settings));
+    }
+
+    /**
+     * A fixed number of (pre-started) threads, not to blur the thread counts
+     * taken by {@link Probe}.
+     */
+    private static ExecutorService newExecutor() {
+        final AtomicInteger counter = new AtomicInteger();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(SERVER_THREADS, SERVER_THREADS,
+                0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, "fake-drive-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.prestartAllCoreThreads();
+        return executor;
+    }
+
+    private static void createKeyStore(final File keyStore) throws IOException, InterruptedException {
+        if (keyStore.exists() && !keyStore.delete()) {
+            throw new IOException(String.format("Cannot delete: '%s'", keyStore.getAbsolutePath()));
+        }
+        final File directory = keyStore.getAbsoluteFile().getParentFile();
+        if (!directory.mkdirs() && !directory.isDirectory()) {
+            throw new IOException(String.format("Cannot create folder: '%s'", directory.getAbsolutePath()));
+        }
+
+        final File keytool = new File(new File(System.getProperty("java.home"), "bin"), "keytool");
+        final Process process = new ProcessBuilder(keytool.getAbsolutePath(), "-genkeypair",
+                "-keystore", keyStore.getAbsolutePath(), "-storetype", "PKCS12",
+                "-storepass", "notasecret", "-keypass", "notasecret", "-alias", "privatekey",
+                "-keyalg", "RSA", "-keysize", "2048", "-validity", "1", "-dname", "CN=fake-drive")
+                .redirectErrorStream(true).start();
+        final String output = new String(readFully(process.getInputStream()), UTF_8);
+        if (process.waitFor() != 0) {
+            throw new IOException(String.format("Cannot create service account key: %s", output));
+        }
+    }
+
+    private String get(final String key, final String defaultValue) {
+        final String value = settings.get(key);
+        return (value != null) ? value : defaultValue;
+    }
+
+    private enum Fault {
+        NONE, SERVER_ERROR, RATE_LIMIT, DROP, SLOW
+    }
+
+    private Fault nextFault() {
+        final double roll;
+        synchronized (random) {
+            roll = random.nextDouble();
+        }
+
+        double threshold = serverErrorRate;
+        if (roll < threshold) {
+            serverErrors.incrementAndGet();
+            return Fault.SERVER_ERROR;
+        }
+        threshold += rateLimitRate;
+        if (roll < threshold) {
+            rateLimits.incrementAndGet();
+            return Fault.RATE_LIMIT;
+        }
+        threshold += dropRate;
+        if (roll < threshold) {
+            drops.incrementAndGet();
+            return Fault.DROP;
+        }
+        threshold += slowRate;
+        if (roll < threshold) {
+            slowStreams.incrementAndGet();
+            return Fault.SLOW;
+        }
+        return Fault.NONE;
+    }
+
+    private Fault nextContentFault() {
+        final Fault fault = nextFault();
+        if (fault == Fault.DROP) {
+            contentDrops.incrementAndGet();
+        }
+        return fault;
+    }
+
+    /**
+     * Replies with the given content, unless the given fault says otherwise.
+     */
+    private void reply(final HttpExchange exchange, final String contentType, final byte[] content,
+                       final Fault fault) throws IOException {
+        reply(exchange, 200, contentType, content, fault);
+    }
+
+    private void reply(final HttpExchange exchange, final int status, final String contentType,
+                       final byte[] content, final Fault fault) throws IOException {
+        try {
+            sleep(latencyMillis);
+            switch (fault) {
+                case SERVER_ERROR:
+                    sendError(exchange, 503, "backendError", "Backend Error");
+                    return;
+                case RATE_LIMIT:
+                    sendError(exchange, 429, "rateLimitExceeded", "Rate Limit Exceeded");
+                    return;
+                default:
+                    break;
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            exchange.sendResponseHeaders(status, content.length);
+            final OutputStream body = exchange.getResponseBody();
+            if (fault == Fault.DROP) {
+                // Closing the exchange before the declared length is written
+                // closes the underlying connection
+                body.write(content, 0, content.length / 2);
+                body.flush();
+                return;
+            }
+            if (fault == Fault.SLOW) {
+                for (int offset = 0; offset < content.length; offset += slowChunkSize) {
+                    body.write(content, offset, Math.min(slowChunkSize, content.length - offset));
+                    body.flush();
+                    sleep(slowChunkDelayMillis);
+                }
+                return;
+            }
+            body.write(content);
+        } finally {
+            closeQuietly(exchange);
+        }
+    }
+
+    private static void sendError(final HttpExchange exchange, final int code, final String reason,
+                                  final String message) throws IOException {
+        exchange.getResponseHeaders().clear();
+        final byte[] content = String.format(
+                "{\"error\":{\"errors\":[{\"domain\":\"usageLimits\",\"reason\":\"%s\",\"message\":\"%s\"}],"
+                        + "\"code\":%d,\"message\":\"%s\"}}", reason, message, code, message).getBytes(UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(code, content.length);
+        exchange.getResponseBody().write(content);
+    }
+
+    private static void closeQuietly(final HttpExchange exchange) {
+        try {
+            exchange.close();
+        } catch (RuntimeException e) {
+            // Thrown when the declared length was not written, i.e. on purpose
+        }
+    }
+
+    /**
+     * The document is recorded before the change id is published, so that
+     * the changes feed never reports a change id without its change.
+     */
+    private synchronized void edit(final int index) {
+        final long changeId = largestChangeId.get() + 1;
+        changeIds.set(index, changeId);
+        largestChangeId.set(changeId);
+    }
+
+    private byte[] getChangeList(final long startChangeId) {
+        final long largest = largestChangeId.get();
+        final StringBuilder builder = new StringBuilder("{\"kind\":\"drive#changeList\",\"items\":[");
+        boolean first = true;
+        for (int i = 0; i < documents; i++) {
+            final long changeId = changeIds.get(i);
+            if (changeId >= startChangeId && changeId <= largest) {
+                if (!first) {
+                    builder.append(',');
+                }
+                first = false;
+                builder.append("{\"kind\":\"drive#change\",\"id\":\"").append(changeId)
+                        .append("\",\"fileId\":\"").append(getId(i)).append("\",\"file\":");
+                appendFile(builder, i);
+                builder.append('}');
+            }
+        }
+        return builder.append("],\"largestChangeId\":\"").append(largest).append("\"}").toString().getBytes(UTF_8);
+    }
+
+    private byte[] getFileList(final String query, final int maxResults, final String pageToken) {
+        final List<Integer> matches = new ArrayList<Integer>();
+        final Matcher parent = PARENT_CLAUSE.matcher(query);
+        if (parent.find()) {
+            if (FOLDER_ID.equals(parent.group(1))) {
+                for (int i = 0; i < documents; i++) {
+                    matches.add(i);
+                }
+            }
+        } else {
+            final Matcher title = TITLE_CLAUSE.matcher(query);
+            while (title.find()) {
+                final String unescaped = title.group(1).replace("\\'", "'").replace("\\\\", "\\");
+                final int index = getIndex(unescaped);
+                if (index != -1) {
+                    matches.add(index);
+                }
+            }
+        }
+
+        final int from = (pageToken != null) ? Integer.parseInt(pageToken) : 0;
+        final int to = Math.min(matches.size(), from + maxResults);
+        final StringBuilder builder = new StringBuilder("{\"kind\":\"drive#fileList\",\"items\":[");
+        for (int i = from; i < to; i++) {
+            if (i > from) {
+                builder.append(',');
+            }
+            appendFile(builder, matches.get(i));
+        }
+        builder.append(']');
+        if (to < matches.size()) {
+            builder.append(",\"nextPageToken\":\"").append(to).append('"');
+        }
+        return builder.append('}').toString().getBytes(UTF_8);
+    }
+
+    private int getIndex(final String title) {
+        if (!title.startsWith("Document ")) {
+            return -1;
+        }
+        try {
+            final int index = Integer.parseInt(title.substring("Document ".length()));
+            return (index >= 0 && index < documents && getTitle(index).equals(title)) ? index : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String getId(final int index) {
+        return String.format("doc-%05d", index);
+    }
+
+    private void appendFile(final StringBuilder builder, final int index) {
+        final String id = getId(index);
+        final long changeId = changeIds.get(index);
+        builder.append("{\"kind\":\"drive#file\",\"id\":\"").append(id)
+                .append("\",\"title\":\"").append(getTitle(index))
+                .append("\",\"mimeType\":\"").append(binary ? EXPORT_MIME_TYPE : DOCUMENT_MIME_TYPE)
+                .append("\",\"modifiedDate\":\"").append(getModifiedDate(changeId))
+                .append("\",\"etag\":\"\\\"etag-").append(id).append('-').append(changeId).append("\\\"\"")
+                .append(",\"parents\":[{\"id\":\"").append(FOLDER_ID).append("\"}]");
+        if (binary) {
+            builder.append(",\"fileSize\":\"").append(documentSize)
+                    .append("\",\"downloadUrl\":\"http://localhost:").append(port).append("/download/").append(id)
+                    .append("\"}");
+        } else {
+            builder.append(",\"exportLinks\":{\"").append(EXPORT_MIME_TYPE).append("\":\"http://localhost:")
+                    .append(port).append("/export/").append(id).append("?exportFormat=html\"}}");
+        }
+    }
+
+    private static String getModifiedDate(final long changeId) {
+        final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(MODIFIED_TIME + TimeUnit.SECONDS.toMillis(changeId)));
+    }
+
+    private byte[] getDocument(final String id) {
+        final int index = Integer.parseInt(id.substring("doc-".length()));
+        final long changeId = changeIds.get(index);
+        if (images == 0) {
+            return getDocument(id, changeId, documentSize);
+        }
+        return fill(String.format(
+                "<html><head><style type=\"text/css\">/* fake */ .c%d { color : red ; }</style></head>"
+                        + "<body><p>%s v%d</p><img alt=\"\" src=\"http://localhost:%d/images/img-%d.png?w=1&amp;h=1\">",
+                index, id, changeId, port, index % images).getBytes(UTF_8), documentSize);
+    }
+
+    /**
+     * @return the content of the given version of a document (without
+     * images), as served
+     */
+    static byte[] getDocument(final String id, final long changeId, final int documentSize) {
+        return fill(String.format("<html><body><p>%s v%d</p>", id, changeId).getBytes(UTF_8), documentSize);
+    }
+
+    private static byte[] fill(final byte[] header, final int documentSize) {
+        final byte[] content = new byte[documentSize];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (i < header.length) ? header[i] : (byte) ('a' + (i % 26));
+        }
+        return content;
+    }
+
+    private static Map<String, String> getParameters(final HttpExchange exchange) throws IOException {
+        final Map<String, String> parameters = new LinkedHashMap<String, String>();
+        final String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return parameters;
+        }
+        for (final String pair : query.split("&")) {
+            final int separator = pair.indexOf('=');
+            if (separator != -1) {
+                parameters.put(URLDecoder.decode(pair.substring(0, separator), "UTF-8"),
+                        URLDecoder.decode(pair.substring(separator + 1), "UTF-8"));
+            }
+        }
+        return parameters;
+    }
+
+    private static byte[] readFully(final InputStream inputStream) throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int count;
+        while ((count = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, count);
+        }
+        inputStream.close();
+        return outputStream.toByteArray();
+    }
+
+    private static void sleep(final long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private class TokenHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            requests.incrementAndGet();
+            final String request = new String(readFully(exchange.getRequestBody()), UTF_8);
+            // Service accounts (i.e. JWT grants) do not get refresh tokens
+            final String refreshToken = request.contains("grant_type=authorization_code")
+                    ? ",\"refresh_token\":\"fake-refresh-token\"" : "";
+            reply(exchange, "application/json", ("{\"access_token\":\"fake-access-token\",\"token_type\":\"Bearer\","
+                    + "\"expires_in\":3600" + refreshToken + "}").getBytes(UTF_8), Fault.NONE);
+        }
+    }
+
+    private class DriveHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            requests.incrementAndGet();
+            readFully(exchange.getRequestBody());
+            final String path = exchange.getRequestURI().getPath();
+            final String method = exchange.getRequestMethod();
+
+            if ("/drive/v2/files".equals(path) && "GET".equals(method)) {
+                final Map<String, String> parameters = getParameters(exchange);
+                final String query = parameters.containsKey("q") ? parameters.get("q") : "";
+                final int maxResults = parameters.containsKey("maxResults")
+                        ? Integer.parseInt(parameters.get("maxResults")) : 100;
+                reply(exchange, "application/json; charset=UTF-8",
+                        getFileList(query, maxResults, parameters.get("pageToken")),
+                        PARENT_CLAUSE.matcher(query).find() ? nextFault() : Fault.NONE);
+            } else if (path.startsWith("/drive/v2/files/") && "DELETE".equals(method)) {
+                exchange.sendResponseHeaders(204, -1);
+                closeQuietly(exchange);
+            } else if ("/drive/v2/about".equals(path)) {
+                reply(exchange, "application/json; charset=UTF-8",
+                        String.format("{\"kind\":\"drive#about\",\"largestChangeId\":\"%d\"}",
+                                largestChangeId.get()).getBytes(UTF_8), Fault.NONE);
+            } else if ("/drive/v2/changes".equals(path)) {
+                final String startChangeId = getParameters(exchange).get("startChangeId");
+                reply(exchange, "application/json; charset=UTF-8",
+                        getChangeList((startChangeId != null) ? Long.parseLong(startChangeId) : 1), Fault.NONE);
+            } else {
+                sendError(exchange, 404, "notFound", "Not Found");
+                closeQuietly(exchange);
+            }
+        }
+    }
+
+    /**
+     * Accepts (and forgets) the credentials uploaded by the plugin.
+     */
+    private class UploadHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            requests.incrementAndGet();
+            readFully(exchange.getRequestBody());
+            reply(exchange, "application/json; charset=UTF-8",
+                    "{\"kind\":\"drive#file\",\"id\":\"credentials\",\"title\":\"service\"}".getBytes(UTF_8),
+                    Fault.NONE);
+        }
+    }
+
+    /**
+     * Serves exports and downloads, whole or in part.
+     */
+    private class ContentHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            requests.incrementAndGet();
+            exports.incrementAndGet();
+            readFully(exchange.getRequestBody());
+            final String path = exchange.getRequestURI().getPath();
+            final String id = path.substring(path.indexOf('/', 1) + 1);
+            final byte[] document = getDocument(id);
+            final String etag = String.format("\"content-%s\"", id);
+
+            final Headers headers = exchange.getResponseHeaders();
+            headers.set("Accept-Ranges", "bytes");
+            headers.set("ETag", etag);
+            final String range = exchange.getRequestHeaders().getFirst("Range");
+            final String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+            final Matcher matcher = (range != null) ? RANGE.matcher(range) : null;
+            if (matcher != null && matcher.matches() && (ifRange == null || ifRange.equals(etag))) {
+                rangeRequests.incrementAndGet();
+                final int first = Integer.parseInt(matcher.group(1));
+                final int last = matcher.group(2).isEmpty()
+                        ? document.length - 1 : Math.min(document.length - 1, Integer.parseInt(matcher.group(2)));
+                if (first > last) {
+                    sendError(exchange, 416, "requestedRangeNotSatisfiable", "Requested Range Not Satisfiable");
+                    closeQuietly(exchange);
+                    return;
+                }
+                headers.set("Content-Range", String.format("bytes %d-%d/%d", first, last, document.length));
+                reply(exchange, 206, EXPORT_MIME_TYPE, Arrays.copyOfRange(document, first, last + 1),
+                        nextContentFault());
+            } else {
+                reply(exchange, EXPORT_MIME_TYPE, document, nextContentFault());
+            }
+        }
+    }
+
+    /**
+     * Serves the images referenced by exports;  never faulted.  Images stand
+     * for third party hosts, which must never see the Drive credentials.
+     */
+    private class ImageHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            requests.incrementAndGet();
+            imageRequests.incrementAndGet();
+            if (exchange.getRequestHeaders().containsKey("Authorization")) {
+                authorizedImageRequests.incrementAndGet();
+            }
+            readFully(exchange.getRequestBody());
+            final String path = exchange.getRequestURI().getPath();
+            reply(exchange, "image/png", path.substring(path.lastIndexOf('/') + 1).getBytes(UTF_8), Fault.NONE);
+        }
+    }
+
+    private class StatsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            final Properties stats = new Properties();
+            stats.setProperty("documents", String.valueOf(documents));
+            stats.setProperty("documentSize", String.valueOf(documentSize));
+            stats.setProperty("requests", String.valueOf(requests.get()));
+            stats.setProperty("exports", String.valueOf(exports.get()));
+            stats.setProperty("rangeRequests", String.valueOf(rangeRequests.get()));
+            stats.setProperty("contentDrops", String.valueOf(contentDrops.get()));
+            stats.setProperty("serverErrors", String.valueOf(serverErrors.get()));
+            stats.setProperty("rateLimits", String.valueOf(rateLimits.get()));
+            stats.setProperty("drops", String.valueOf(drops.get()));
+            stats.setProperty("slowStreams", String.valueOf(slowStreams.get()));
+            stats.setProperty("images", String.valueOf(images));
+            stats.setProperty("imageRequests", String.valueOf(imageRequests.get()));
+            stats.setProperty("authorizedImageRequests", String.valueOf(authorizedImageRequests.get()));
+            stats.setProperty("largestChangeId", String.valueOf(largestChangeId.get()));
+
+            final ByteArrayOutputStream content = new ByteArrayOutputStream();
+            stats.store(content, null);
+            reply(exchange, "text/plain; charset=ISO-8859-1", content.toByteArray(), Fault.NONE);
+        }
+    }
+}
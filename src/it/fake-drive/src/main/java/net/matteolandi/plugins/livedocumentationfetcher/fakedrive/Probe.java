@@ -0,0 +1,93 @@
+package net.matteolandi.plugins.livedocumentationfetcher.fakedrive;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Takes a snapshot of the JVM running the build (live threads, open file
+ * descriptors) and of the counters of {@link FakeDrive}, and saves it to a
+ * file for {@link Verify} to compare with a later one.
+ *
+ * Arguments: url (of the fake Drive) and file.
+ */
+public class Probe {
+    private static final long SAMPLE_INTERVAL_MILLIS = 250;
+    private static final long SETTLE_TIMEOUT_MILLIS = 10000;
+    private static final int STABLE_SAMPLES = 4;
+
+    public static void main(final String[] args) throws Exception {
+        final Map<String, String> arguments = FakeDrive.parseArguments(args);
+        final Properties snapshot = new Properties();
+        snapshot.setProperty("threads", String.valueOf(getSettledThreadCount()));
+        snapshot.setProperty("openFileDescriptors", String.valueOf(getOpenFileDescriptorCount()));
+
+        // Read after counting, not to count the connection itself
+        final Properties stats = getStats(arguments.get("url"));
+        for (final String name : stats.stringPropertyNames()) {
+            snapshot.setProperty("server." + name, stats.getProperty(name));
+        }
+
+        final File file = new File(arguments.get("file"));
+        final OutputStream outputStream = new FileOutputStream(file);
+        try {
+            snapshot.store(outputStream, null);
+        } finally {
+            outputStream.close();
+        }
+        System.out.println(String.format("Probe '%s': %s", file.getName(), snapshot));
+    }
+
+    /**
+     * Threads of executor services shut down at the end of an execution take
+     * a while to actually terminate:  waits for the count to settle.
+     */
+    private static int getSettledThreadCount() throws InterruptedException {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        final long deadline = System.currentTimeMillis() + SETTLE_TIMEOUT_MILLIS;
+        int count = threads.getThreadCount();
+        int stable = 0;
+        while (stable < STABLE_SAMPLES && System.currentTimeMillis() < deadline) {
+            Thread.sleep(SAMPLE_INTERVAL_MILLIS);
+            final int current = threads.getThreadCount();
+            stable = (current == count) ? stable + 1 : 0;
+            count = current;
+        }
+        return count;
+    }
+
+    /**
+     * @return -1, where not supported (i.e. on Windows)
+     */
+    private static long getOpenFileDescriptorCount() {
+        final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.UnixOperatingSystemMXBean) {
+            return ((com.sun.management.UnixOperatingSystemMXBean) os).getOpenFileDescriptorCount();
+        }
+        return -1;
+    }
+
+    private static Properties getStats(final String url) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(new URL(url), "stats").openConnection();
+        // Not to leave a pooled connection (and its timer thread) behind
+        connection.setRequestProperty("Connection", "close");
+        final Properties stats = new Properties();
+        final InputStream inputStream = connection.getInputStream();
+        try {
+            stats.load(inputStream);
+        } finally {
+            inputStream.close();
+            connection.disconnect();
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,290 @@
+package net.matteolandi.plugins.livedocumentationfetcher.fakedrive;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Checks the outcome of a build fetching the documents of {@link FakeDrive}:
+ *
+ * <ul>
+ * <li>every output directory contains all the documents, each with the
+ * content of one of its versions, byte by byte</li>
+ * <li>each fault injected by the server was retried exactly once (at most
+ * once, when downloads are split into parallel ranges failing together), and
+ * each error status reported by the plugin matches one the server sent</li>
+ * <li>each dropped download was resumed with a range request</li>
+ * <li>threads and open file descriptors did not grow (more than the given
+ * slack) between two {@link Probe}s</li>
+ * <li>each execution fetched at least minThroughput documents per second</li>
+ * <li>at least minEdited documents were fetched in an edited version (see
+ * {@link FakeDrive} changeIntervalMillis)</li>
+ * <li>when imagesDirectory is given, documents were post-processed:  their
+ * styles minified, their images localized into imagesDirectory, and each
+ * image downloaded exactly once, without credentials (see {@link FakeDrive}
+ * images)</li>
+ * <li>when maxExports is given, documents configured several times were
+ * downloaded once, and fanned out to all of their destinations</li>
+ * </ul>
+ *
+ * Arguments: outputDirectories and reports (comma separated), before and
+ * after (probe files), maxThreadGrowth, maxDescriptorGrowth, minThroughput and,
+ * optionally, exactRetries (default true), minEdited (default 0),
+ * imagesDirectory and maxExports.
+ */
+public class Verify {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final Pattern IMAGE = Pattern.compile("<img [^>]*src=\"([^\"]*)\"");
+    private static final Pattern VERSION = Pattern.compile("<html><body><p>(doc-(\\d+)) v(\\d+)</p>");
+
+    private final List<String> failures = new ArrayList<String>();
+
+    public static void main(final String[] args) throws Exception {
+        final Map<String, String> arguments = FakeDrive.parseArguments(args);
+        final Verify verify = new Verify();
+        final Properties before = load(new File(arguments.get("before")));
+        final Properties after = load(new File(arguments.get("after")));
+        final int documents = Integer.parseInt(after.getProperty("server.documents"));
+        final int documentSize = Integer.parseInt(after.getProperty("server.documentSize"));
+
+        final String minEdited = arguments.get("minEdited");
+        final String imagesDirectory = arguments.get("imagesDirectory");
+        for (final String outputDirectory : arguments.get("outputDirectories").split(",")) {
+            if (imagesDirectory != null) {
+                verify.checkPostProcessed(new File(outputDirectory.trim()), documents, new File(imagesDirectory));
+            } else {
+                verify.checkDocuments(new File(outputDirectory.trim()), documents, documentSize);
+            }
+            if (minEdited != null) {
+                verify.checkEdits(new File(outputDirectory.trim()), Integer.parseInt(minEdited));
+            }
+        }
+
+        final List<JsonNode> reports = new ArrayList<JsonNode>();
+        for (final String report : arguments.get("reports").split(",")) {
+            reports.add(OBJECT_MAPPER.readTree(new File(report.trim())));
+        }
+        final String exactRetries = arguments.get("exactRetries");
+        verify.checkRetries(reports, after, exactRetries == null || Boolean.parseBoolean(exactRetries));
+        verify.checkResumes(after);
+        if (imagesDirectory != null) {
+            verify.checkImages(new File(imagesDirectory), after);
+        }
+        if (arguments.get("maxExports") != null) {
+            verify.checkExports(after, Long.parseLong(arguments.get("maxExports")));
+        }
+        verify.checkThroughput(reports, documents, Double.parseDouble(arguments.get("minThroughput")));
+        verify.checkGrowth("threads", before, after, Long.parseLong(arguments.get("maxThreadGrowth")));
+        verify.checkGrowth("openFileDescriptors", before, after,
+                Long.parseLong(arguments.get("maxDescriptorGrowth")));
+
+        if (!verify.failures.isEmpty()) {
+            throw new IllegalStateException(String.format("Verification failed: %s", verify.failures));
+        }
+        System.out.println("Verification passed");
+    }
+
+    private void checkDocuments(final File outputDirectory, final int documents, final int documentSize)
+            throws IOException {
+        final File[] files = outputDirectory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File directory, String name) {
+                return name.endsWith(".html");
+            }
+        });
+        final int count = (files != null) ? files.length : 0;
+        if (count != documents) {
+            failures.add(String.format("%s: expected %d documents, found %d", outputDirectory, documents, count));
+            return;
+        }
+        for (final File file : files) {
+            if (file.length() != documentSize) {
+                failures.add(String.format("%s: expected %d bytes, found %d", file, documentSize, file.length()));
+                continue;
+            }
+            // The version is the only part that cannot be told in advance
+            final byte[] content = Files.readAllBytes(file.toPath());
+            final Matcher matcher = VERSION.matcher(new String(content, 0, Math.min(64, content.length),
+                    FakeDrive.UTF_8));
+            if (!matcher.lookingAt()
+                    || !file.getName().startsWith(FakeDrive.getTitle(Integer.parseInt(matcher.group(2))) + ".")) {
+                failures.add(String.format("%s: not the content of the document", file));
+            } else if (!Arrays.equals(content, FakeDrive.getDocument(matcher.group(1),
+                    Long.parseLong(matcher.group(3)), documentSize))) {
+                failures.add(String.format("%s: content differs from %s v%s", file, matcher.group(1),
+                        matcher.group(3)));
+            }
+        }
+    }
+
+    private void checkPostProcessed(final File outputDirectory, final int documents, final File imagesDirectory)
+            throws IOException {
+        final File[] files = outputDirectory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File directory, String name) {
+                return name.endsWith(".html");
+            }
+        });
+        final int count = (files != null) ? files.length : 0;
+        if (count != documents) {
+            failures.add(String.format("%s: expected %d documents, found %d", outputDirectory, documents, count));
+            return;
+        }
+        for (final File file : files) {
+            final String content = new String(Files.readAllBytes(file.toPath()), FakeDrive.UTF_8);
+            if (content.contains("/*") || !content.contains("{color :red}")) {
+                failures.add(String.format("%s: styles not minified", file));
+            }
+            final Matcher matcher = IMAGE.matcher(content);
+            if (!matcher.find()) {
+                failures.add(String.format("%s: no image", file));
+            } else if (!new File(file.getParentFile(), matcher.group(1)).getCanonicalFile()
+                    .getParentFile().equals(imagesDirectory.getCanonicalFile())
+                    || !new File(file.getParentFile(), matcher.group(1)).isFile()) {
+                failures.add(String.format("%s: image not localized: '%s'", file, matcher.group(1)));
+            }
+        }
+    }
+
+    private void checkImages(final File imagesDirectory, final Properties after) {
+        final long images = Long.parseLong(after.getProperty("server.images"));
+        final long imageRequests = Long.parseLong(after.getProperty("server.imageRequests"));
+        final File[] files = imagesDirectory.listFiles();
+        final int count = (files != null) ? files.length : 0;
+        System.out.println(String.format("Images: %d, downloaded %d times, %d localized", images, imageRequests,
+                count));
+        if (imageRequests != images || count != images) {
+            failures.add(String.format("Expected %d images downloaded once each, downloaded %d times, %d localized",
+                    images, imageRequests, count));
+        }
+        final long authorizedImageRequests = Long.parseLong(after.getProperty("server.authorizedImageRequests"));
+        if (authorizedImageRequests > 0) {
+            failures.add(String.format("Expected images to be downloaded without credentials, %d were not",
+                    authorizedImageRequests));
+        }
+    }
+
+    private void checkExports(final Properties after, final long maxExports) {
+        final long exports = Long.parseLong(after.getProperty("server.exports"));
+        System.out.println(String.format("Exports: %d", exports));
+        if (exports > maxExports) {
+            failures.add(String.format("Expected at most %d exports, found %d", maxExports, exports));
+        }
+    }
+
+    private void checkEdits(final File outputDirectory, final int minEdited) throws IOException {
+        int edited = 0;
+        for (final File file : outputDirectory.listFiles()) {
+            if (!file.isFile()) {
+                continue;
+            }
+            final byte[] header = new byte[64];
+            final InputStream inputStream = new FileInputStream(file);
+            try {
+                final String content = new String(header, 0, Math.max(0, inputStream.read(header)), FakeDrive.UTF_8);
+                if (content.contains("<p>doc-") && !content.contains(" v0</p>")) {
+                    edited++;
+                }
+            } finally {
+                inputStream.close();
+            }
+        }
+        System.out.println(String.format("%s: %d edited documents", outputDirectory, edited));
+        if (edited < minEdited) {
+            failures.add(String.format("%s: expected at least %d edited documents, found %d",
+                    outputDirectory, minEdited, edited));
+        }
+    }
+
+    private void checkRetries(final List<JsonNode> reports, final Properties after, final boolean exactRetries) {
+        final long serverErrors = Long.parseLong(after.getProperty("server.serverErrors"));
+        final long rateLimits = Long.parseLong(after.getProperty("server.rateLimits"));
+        final long drops = Long.parseLong(after.getProperty("server.drops"));
+        long retries = 0;
+        long serverErrorStatuses = 0;
+        long rateLimitStatuses = 0;
+        for (final JsonNode report : reports) {
+            final Iterator<JsonNode> causes = report.get("retries").getElements();
+            while (causes.hasNext()) {
+                retries += causes.next().getLongValue();
+            }
+            serverErrorStatuses += getLong(report.get("httpStatuses"), "503");
+            rateLimitStatuses += getLong(report.get("httpStatuses"), "429");
+        }
+
+        System.out.println(String.format(
+                "Faults injected: %d server errors, %d rate limits, %d drops;  retries: %d",
+                serverErrors, rateLimits, drops, retries));
+        final long faults = serverErrors + rateLimits + drops;
+        if (exactRetries ? retries != faults : retries > faults || (faults > 0 && retries == 0)) {
+            failures.add(String.format("Expected %s%d retries, found %d", exactRetries ? "" : "at most ", faults,
+                    retries));
+        }
+        if (serverErrorStatuses != serverErrors) {
+            failures.add(String.format("Expected %d server errors, reported %d", serverErrors, serverErrorStatuses));
+        }
+        if (rateLimitStatuses != rateLimits) {
+            failures.add(String.format("Expected %d rate limits, reported %d", rateLimits, rateLimitStatuses));
+        }
+    }
+
+    private void checkResumes(final Properties after) {
+        final long contentDrops = Long.parseLong(after.getProperty("server.contentDrops"));
+        final long rangeRequests = Long.parseLong(after.getProperty("server.rangeRequests"));
+        System.out.println(String.format("Downloads dropped: %d;  range requests: %d", contentDrops, rangeRequests));
+        if (rangeRequests < contentDrops) {
+            failures.add(String.format("Expected at least %d range requests, found %d", contentDrops, rangeRequests));
+        }
+    }
+
+    private void checkThroughput(final List<JsonNode> reports, final int documents, final double minThroughput) {
+        for (final JsonNode report : reports) {
+            final long elapsedMillis = Math.max(1, report.get("elapsedMillis").getLongValue());
+            final double throughput = documents * 1000.0 / elapsedMillis;
+            System.out.println(String.format("Fetched %d documents in %d ms: %.1f documents/s",
+                    documents, elapsedMillis, throughput));
+            if (throughput < minThroughput) {
+                failures.add(String.format("Expected at least %.1f documents/s, got %.1f", minThroughput, throughput));
+            }
+        }
+    }
+
+    private void checkGrowth(final String name, final Properties before, final Properties after,
+                             final long maxGrowth) {
+        final long initial = Long.parseLong(before.getProperty(name));
+        final long current = Long.parseLong(after.getProperty(name));
+        System.out.println(String.format("%s: %d before, %d after", name, initial, current));
+        if (initial >= 0 && current - initial > maxGrowth) {
+            failures.add(String.format("%s grew from %d to %d", name, initial, current));
+        }
+    }
+
+    private static long getLong(final JsonNode node, final String field) {
+        return (node != null && node.has(field)) ? node.get(field).getLongValue() : 0;
+    }
+
+    private static Properties load(final File file) throws IOException {
+        final Properties properties = new Properties();
+        final InputStream inputStream = new FileInputStream(file);
+        try {
+            properties.load(inputStream);
+        } finally {
+            inputStream.close();
+        }
+        return properties;
+    }
+}
@@ -0,0 +1,740 @@
+package net.matteolandi.plugins.livedocumentationfetcher;
+
+import com.google.api.client.auth.oauth2.CredentialStore;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.services.drive.model.File;
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
+import com.google.common.base.Objects;
+import com.google.common.base.Strings;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multimaps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import net.matteolandi.plugins.livedocumentationfetcher.googledrive.ChangeSet;
+import net.matteolandi.plugins.livedocumentationfetcher.googledrive.DriveRateLimiter;
+import net.matteolandi.plugins.livedocumentationfetcher.googledrive.EndpointSettings;
+import net.matteolandi.plugins.livedocumentationfetcher.googledrive.GoogleDriveAuthSettings;
+import net.matteolandi.plugins.livedocumentationfetcher.googledrive.GoogleDriveBasedCredentialStore;
+import net.matteolandi.plugins.livedocumentationfetcher.googledrive.GoogleDriveService;
+import net.matteolandi.plugins.livedocumentationfetcher.googledrive.GoogleDriveUtils;
+import net.matteolandi.plugins.livedocumentationfetcher.googledrive.LocalCachingCredentialStore;
+import net.matteolandi.plugins.livedocumentationfetcher.http.ConfiguringHttpRequestInitializer;
+import net.matteolandi.plugins.livedocumentationfetcher.http.HttpSettings;
+import net.matteolandi.plugins.livedocumentationfetcher.http.HttpTransports;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugins.annotations.Parameter;
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.functions.Func0;
+import rx.functions.Func1;
+import rx.schedulers.Schedulers;
+import rx.util.async.Async;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Configuration and fetch pipeline shared by the goals of the plugin:  where
+ * documents come from and go to, how Google Drive is accessed, and how
+ * documents are downloaded and written.
+ */
+public abstract class AbstractFetchMojo extends AbstractMojo {
+    @Parameter(required = true)
+    public GoogleDriveAuthSettings googleDriveAuth;
+
+    @Parameter(defaultValue = "${project.build.directory}")
+    public java.io.File outputDirectory;
+
+    @Parameter
+    public Document[] documents = new Document[0];
+
+    /**
+     * Drive folders whose documents should all be fetched.
+     */
+    @Parameter
+    public Folder[] folders = new Folder[0];
+
+    /**
+     * Drive search queries whose matching documents should all be fetched.
+     */
+    @Parameter
+    public Query[] queries = new Query[0];
+
+    /**
+     * Maximum number of titles looked-up with a single Drive query.
+     */
+    @Parameter(defaultValue = "50")
+    public int lookupBatchSize;
+
+    /**
+     * When enabled, the Drive changes feed is used to find out which documents
+     * were modified since the last execution;  only those are looked-up and
+     * fetched again.
+     */
+    @Parameter(defaultValue = "false")
+    public boolean useChangesFeed;
+
+    /**
+     * Where OAuth2 credentials are cached, to avoid loading them from Google
+     * Drive at every execution.
+     */
+    @Parameter(defaultValue = "${user.home}/.live-documentation-fetcher/credentials")
+    public java.io.File credentialCacheDirectory;
+
+    /**
+     * Maximum number of documents downloaded at the same time.
+     */
+    @Parameter(defaultValue = "8")
+    public int maxConcurrentDownloads;
+
+    /**
+     * Maximum number of requests per second sent to Google Drive (look-ups and
+     * downloads alike);  the actual rate is automatically lowered when Drive
+     * reports that the limit has been exceeded.
+     */
+    @Parameter(defaultValue = "10")
+    public double maxRequestsPerSecond;
+
+    /**
+     * How failed requests are retried.
+     */
+    @Parameter
+    public RetrySettings retry = new RetrySettings();
+
+    /**
+     * Size of the buffer used to write downloaded documents to disk.
+     */
+    @Parameter(defaultValue = "65536")
+    public int writeBufferSize;
+
+    /**
+     * When enabled, downloaded documents are flushed to the storage device
+     * before replacing the previous ones.
+     */
+    @Parameter(defaultValue = "false")
+    public boolean fsync;
+
+    /**
+     * Number of byte ranges, fetched in parallel, files larger than
+     * parallelRangeThreshold are split into;  only files whose size is known
+     * in advance (i.e. not exported Google documents) are split, and 1
+     * disables the splitting altogether.
+     */
+    @Parameter(defaultValue = "1")
+    public int parallelRanges;
+
+    /**
+     * Size, in bytes, above which files are split into parallelRanges
+     * ranges.
+     */
+    @Parameter(defaultValue = "33554432")
+    public long parallelRangeThreshold;
+
+    /**
+     * How HTML exports are transformed (styles, images) before being
+     * written.
+     */
+    @Parameter
+    public PostProcessingSettings postProcessing = new PostProcessingSettings();
+
+    /**
+     * What runs the look-ups and downloads:  "rx" (downloads on a pool of
+     * maxConcurrentDownloads threads, everything else on the RxJava I/O pool)
+     * or "virtual-threads" (a virtual thread each, at most
+     * maxConcurrentDownloads downloads at a time;  needs Java 21 or later,
+     * "rx" is used otherwise).
+     */
+    @Parameter(property = "liveDocumentationFetcher.engine", defaultValue = ExecutionEngine.RX)
+    public String engine;
+
+    /**
+     * With the virtual-threads engine, when enabled, the first failure
+     * interrupts all the work still running;  otherwise the downloads already
+     * started are completed before the failure is reported.
+     */
+    @Parameter(defaultValue = "false")
+    public boolean failFast;
+
+    /**
+     * HTTP transport settings (connection pool, timeouts).
+     */
+    @Parameter
+    public HttpSettings http = new HttpSettings();
+
+    /**
+     * Google Drive API and OAuth2 token server URLs;  only meant to be changed
+     * to point the plugin at a stand-in server.
+     */
+    @Parameter
+    public EndpointSettings endpoints = new EndpointSettings();
+
+    /**
+     * When enabled, documents are downloaded into a cache shared by all the
+     * builds running on this machine, and then copied into their
+     * destinations.
+     */
+    @Parameter(defaultValue = "false")
+    public boolean useSharedCache;
+
+    @Parameter(defaultValue = "${user.home}/.live-documentation-fetcher/cache")
+    public java.io.File cacheDirectory;
+
+    /**
+     * When enabled, shared cache entries are hard-linked into their
+     * destinations (where supported) instead of copied:  entries are then made
+     * read-only, and so are the destinations linked to them.
+     */
+    @Parameter(defaultValue = "false")
+    public boolean hardLinkCacheEntries;
+
+    @Parameter(property = "liveDocumentationFetcher.skip", defaultValue = "false")
+    public boolean skip;
+
+    /**
+     * When enabled, a report of where the time of the execution went is
+     * written inside reportDirectory, as JSON and CSV.
+     */
+    @Parameter(property = "liveDocumentationFetcher.report", defaultValue = "true")
+    public boolean report;
+
+    @Parameter(defaultValue = "${project.build.directory}/live-documentation-fetcher")
+    public java.io.File reportDirectory;
+
+    @Parameter(defaultValue = "${mojoExecution.executionId}", readonly = true)
+    public String executionId;
+
+    /**
+     * Tells builds apart, for Drive sessions not to outlive the one they were
+     * created by (e.g. in a Maven daemon running several builds).
+     */
+    @Parameter(defaultValue = "${session.startTime}", readonly = true)
+    public Date buildStartTime;
+
+    protected boolean hasNothingToFetch() {
+        return documents.length == 0 && folders.length == 0 && queries.length == 0;
+    }
+
+    protected void checkSettings() throws MojoExecutionException {
+        if (maxConcurrentDownloads <= 0) {
+            throw new MojoExecutionException(String.format("Invalid maxConcurrentDownloads: %d, expected at least 1",
+                    maxConcurrentDownloads));
+        }
+        if (!(maxRequestsPerSecond > 0)) {
+            throw new MojoExecutionException(String.format("Invalid maxRequestsPerSecond: %s, expected more than 0",
+                    maxRequestsPerSecond));
+        }
+        if (!HttpSettings.TRANSPORTS.contains(http.transport)) {
+            throw new MojoExecutionException(String.format("Unknown HTTP transport: '%s', expected one of: %s",
+                    http.transport, HttpSettings.TRANSPORTS));
+        }
+        if (http.maxConnections <= 0) {
+            throw new MojoExecutionException(String.format("Invalid HTTP maxConnections: %d, expected at least 1",
+                    http.maxConnections));
+        }
+        if (!ExecutionEngine.ENGINES.contains(engine)) {
+            throw new MojoExecutionException(String.format("Unknown engine: '%s', expected one of: %s",
+                    engine, ExecutionEngine.ENGINES));
+        }
+        if (!PostProcessingSettings.STYLES.contains(postProcessing.styles)) {
+            throw new MojoExecutionException(String.format("Unknown styles post-processing: '%s', expected one of: %s",
+                    postProcessing.styles, PostProcessingSettings.STYLES));
+        }
+        for (final String imageSource : postProcessing.imageSources) {
+            if (!ImageLocalizer.isValidSource(imageSource)) {
+                throw new MojoExecutionException(String.format(
+                        "Invalid image source: '%s', expected an http(s) URL prefix (e.g. '%s')",
+                        imageSource, "https://*.googleusercontent.com/"));
+            }
+        }
+    }
+
+    protected boolean isUsingChangesFeed() {
+        return useChangesFeed;
+    }
+
+    protected ExecutionEngine newExecutionEngine(final Log log) {
+        final ExecutionEngine executionEngine =
+                ExecutionEngine.create(log, engine, maxConcurrentDownloads, failFast);
+        log.debug(String.format("Using engine: '%s'", executionEngine.getName()));
+        return executionEngine;
+    }
+
+    /**
+     * The Drive session (and with it the whole Google API client, the private
+     * key and the credential store) is only set up once a document actually
+     * needs to be looked-up or downloaded.
+     */
+    protected Observable<GoogleDriveService>
+    getLazyGoogleDriveServiceObservable(final Log log, final RetryPolicy retryPolicy, final FetchMetrics metrics,
+                                        final AtomicReference<DriveSession> sessionReference) {
+        return Observable.defer(new Func0<Observable<GoogleDriveService>>() {
+            @Override
+            public Observable<GoogleDriveService> call() {
+                final DriveSession session = DriveSession.obtain(log, buildStartTime, getSessionKey(),
+                        new Supplier<DriveSession>() {
+                            @Override
+                            public DriveSession get() {
+                                return newSession(log, metrics);
+                            }
+                        });
+                sessionReference.set(session);
+                metrics.attach(session.googleDriveUtils.getStats());
+
+                return session.getGoogleDriveService(
+                        getGoogleDriveServiceObservable(log, session.httpTransport, session.jsonFactory,
+                                session.googleDriveUtils, retryPolicy, metrics,
+                                Observable.just(session.credentialStore)));
+            }
+        });
+    }
+
+    /**
+     * Executions configured with the same credentials, endpoints, HTTP and
+     * rate limit settings share the same session.
+     */
+    private String getSessionKey() {
+        return Hashing.sha1().hashString(
+                googleDriveAuth + "\n" + http + "\n" + endpoints + "\n" + maxRequestsPerSecond + "\n"
+                        + credentialCacheDirectory,
+                Charsets.UTF_8).toString();
+    }
+
+    private DriveSession newSession(final Log log, final FetchMetrics metrics) {
+        final HttpTransport httpTransport = HttpTransports.create(http);
+        final JacksonFactory jsonFactory = new JacksonFactory();
+        final GoogleDriveUtils googleDriveUtils = new GoogleDriveUtils(new DriveRateLimiter(log, maxRequestsPerSecond));
+
+        // The remote store might be needed by a later execution:  retries are
+        // bound to the deadline of the execution actually using it
+        final Supplier<Observable<GoogleDriveBasedCredentialStore>> credentialStoreObservableSupplier =
+                new Supplier<Observable<GoogleDriveBasedCredentialStore>>() {
+                    @Override
+                    public Observable<GoogleDriveBasedCredentialStore> get() {
+                        return getGoogleDriveBasedCredentialStoreObservable(
+                                log, httpTransport, jsonFactory, googleDriveUtils,
+                                new RetryPolicy(log, retry, metrics));
+                    }
+                };
+        return new DriveSession(httpTransport, jsonFactory, googleDriveUtils,
+                getLocalCachingCredentialStore(log, metrics, credentialStoreObservableSupplier));
+    }
+
+    protected void reportMetrics(final Log log, final FetchMetrics metrics) {
+        metrics.log(log);
+        if (!report) {
+            return;
+        }
+
+        final String name = Strings.isNullOrEmpty(executionId) ? "fetch" : executionId;
+        try {
+            metrics.write(reportDirectory, name);
+        } catch (IOException e) {
+            log.warn(String.format("Cannot write metrics report: %s", e.getMessage()), e);
+        }
+    }
+
+    protected static void saveManifest(final Log log, final Manifest manifest) {
+        try {
+            manifest.save();
+        } catch (IOException e) {
+            log.warn(String.format("Cannot save manifest: %s", e.getMessage()), e);
+        }
+    }
+
+    private Observable<GoogleDriveBasedCredentialStore>
+    getGoogleDriveBasedCredentialStoreObservable(final Log log, final HttpTransport httpTransport,
+                                                 final JacksonFactory jsonFactory,
+                                                 final GoogleDriveUtils googleDriveUtils,
+                                                 final RetryPolicy retryPolicy) {
+        return GoogleDriveBasedCredentialStore.observe(
+                log, httpTransport, jsonFactory, http, endpoints, googleDriveUtils,
+                googleDriveAuth.storageAccountEmail, googleDriveAuth.storagePrivateKeyPath)
+                .subscribeOn(Schedulers.io())
+                .retryWhen(retryPolicy.retryWhen("credential store creation"));
+    }
+
+    private LocalCachingCredentialStore
+    getLocalCachingCredentialStore(final Log log, final FetchMetrics metrics,
+                                   final Supplier<Observable<GoogleDriveBasedCredentialStore>>
+                                           credentialStoreObservableSupplier) {
+        final String cacheKey = Hashing.sha1().hashString(
+                googleDriveAuth.storageAccountEmail + ":" + googleDriveAuth.clientId, Charsets.UTF_8).toString();
+
+        return new LocalCachingCredentialStore(log, credentialCacheDirectory, cacheKey,
+                Suppliers.memoize(new Supplier<CredentialStore>() {
+                    @Override
+                    public CredentialStore get() {
+                        final long start = System.nanoTime();
+                        try {
+                            return credentialStoreObservableSupplier.get().toBlocking().single();
+                        } finally {
+                            metrics.time(FetchMetrics.Phase.CREDENTIAL_STORE, start);
+                        }
+                    }
+                }));
+    }
+
+    private Observable<GoogleDriveService>
+    getGoogleDriveServiceObservable(final Log log, final HttpTransport httpTransport,
+                                    final JacksonFactory jsonFactory, final GoogleDriveUtils googleDriveUtils,
+                                    final RetryPolicy retryPolicy, final FetchMetrics metrics,
+                                    final Observable<? extends CredentialStore> credentialStoreObservable) {
+        return credentialStoreObservable.flatMap(new Func1<CredentialStore, Observable<GoogleDriveService>>() {
+            @Override
+            public Observable<GoogleDriveService> call(final CredentialStore credentialStore) {
+                final long start = System.nanoTime();
+                return GoogleDriveService.observe(
+                        log, httpTransport, jsonFactory, http, endpoints, credentialStore, googleDriveUtils,
+                        googleDriveAuth.clientId, googleDriveAuth.clientSecret, googleDriveAuth.authCode)
+                        .subscribeOn(Schedulers.io())
+                        .retryWhen(retryPolicy.retryWhen("Google Drive service creation"))
+                        .doOnNext(new Action1<GoogleDriveService>() {
+                            @Override
+                            public void call(GoogleDriveService googleDriveService) {
+                                metrics.time(FetchMetrics.Phase.DRIVE_SERVICE, start);
+                            }
+                        });
+            }
+        });
+    }
+
+    /**
+     * @return null, if HTML exports are to be written as they are
+     */
+    private HtmlPostProcessor newHtmlPostProcessor(final Log log, final Scheduler downloadScheduler,
+                                                   final RetryPolicy retryPolicy,
+                                                   final DocumentWriter documentWriter) {
+        if (!postProcessing.isEnabled()) {
+            return null;
+        }
+
+        // Shared by all the documents, so that each image is downloaded once;
+        // images are not Drive traffic:  no credentials, and no rate limit
+        final ImageLocalizer imageLocalizer = !postProcessing.localizeImages ? null : new ImageLocalizer(
+                log, new NetHttpTransport().createRequestFactory(new ConfiguringHttpRequestInitializer(null, http)),
+                Arrays.asList(postProcessing.imageSources), downloadScheduler, retryPolicy, documentWriter,
+                (postProcessing.imagesDirectory != null)
+                        ? postProcessing.imagesDirectory : new java.io.File(outputDirectory, "images"));
+        return new HtmlPostProcessor(documentWriter, postProcessing, imageLocalizer);
+    }
+
+    /**
+     * @param trackChanges false, if the given documents are only a part of
+     *                     those configured (the largest change id is then
+     *                     left untouched)
+     */
+    protected Observable<FetchResult>
+    getFetchResultsObservable(final Log log, final Observable<GoogleDriveService> googleDriveServiceObservable,
+                              final Manifest manifest, final ExecutionEngine executionEngine,
+                              final RetryPolicy retryPolicy, final FetchMetrics metrics,
+                              final DocumentWriter documentWriter, final ContentCache contentCache,
+                              final Document[] documents, final boolean trackChanges) {
+        return googleDriveServiceObservable.flatMap(new Func1<GoogleDriveService, Observable<FetchResult>>() {
+            @Override
+            public Observable<FetchResult> call(final GoogleDriveService googleDriveService) {
+                final Scheduler downloadScheduler = executionEngine.getDownloadScheduler();
+                final Scheduler ioScheduler = executionEngine.getIoScheduler();
+                final DocumentDownloader documentDownloader = new DocumentDownloader(
+                        log, googleDriveService, manifest, downloadScheduler, ioScheduler, retryPolicy,
+                        documentWriter, contentCache, metrics, parallelRanges, parallelRangeThreshold,
+                        newHtmlPostProcessor(log, downloadScheduler, retryPolicy, documentWriter));
+                final BulkFetcher bulkFetcher = new BulkFetcher(
+                        log, googleDriveService, documentDownloader, ioScheduler, retryPolicy, metrics);
+
+                return Observable.merge(
+                        fetchConfiguredDocuments(log, googleDriveService, documentDownloader, manifest,
+                                ioScheduler, retryPolicy, metrics, documents, trackChanges),
+                        fetchFoldersAndQueries(bulkFetcher));
+            }
+        });
+    }
+
+    private Observable<FetchResult>
+    fetchConfiguredDocuments(final Log log, final GoogleDriveService googleDriveService,
+                             final DocumentDownloader documentDownloader, final Manifest manifest,
+                             final Scheduler ioScheduler, final RetryPolicy retryPolicy, final FetchMetrics metrics,
+                             final Document[] documents, final boolean trackChanges) {
+        if (!isUsingChangesFeed() || !trackChanges) {
+            return fetchDocuments(log, googleDriveService, documentDownloader, ioScheduler, retryPolicy, metrics,
+                    Arrays.asList(documents));
+        }
+        if (manifest.getLargestChangeId() == null) {
+            return fetchAllDocumentsAndTrackChanges(log, googleDriveService, documentDownloader, manifest,
+                    ioScheduler, retryPolicy, metrics, documents);
+        }
+        return fetchChangedDocuments(log, googleDriveService, documentDownloader, manifest, ioScheduler,
+                retryPolicy, metrics, documents);
+    }
+
+    private Observable<FetchResult> fetchFoldersAndQueries(final BulkFetcher bulkFetcher) {
+        Collection<Observable<FetchResult>> accumulator =
+                Lists.newArrayListWithExpectedSize(folders.length + queries.length);
+
+        for (final Folder folder : folders) {
+            accumulator.add(bulkFetcher.fetch(folder.id, getActualOutputDirectory(folder.outputDirectory),
+                    folder.hierarchy, getFormats(folder.formats)));
+        }
+        for (final Query query : queries) {
+            accumulator.add(bulkFetcher.fetch(query.q, getActualOutputDirectory(query.outputDirectory),
+                    getFormats(query.formats)));
+        }
+        return Observable.merge(accumulator);
+    }
+
+    private Observable<FetchResult>
+    fetchAllDocumentsAndTrackChanges(final Log log, final GoogleDriveService googleDriveService,
+                                     final DocumentDownloader documentDownloader, final Manifest manifest,
+                                     final Scheduler ioScheduler, final RetryPolicy retryPolicy,
+                                     final FetchMetrics metrics, final Document[] documents) {
+        return Async.fromCallable(new Callable<Long>() {
+            @Override
+            public Long call() throws Exception {
+                final long start = System.nanoTime();
+                try {
+                    return googleDriveService.retrieveLargestChangeId();
+                } finally {
+                    metrics.time(FetchMetrics.Phase.LOOKUP, start);
+                }
+            }
+        }, ioScheduler)
+                .retryWhen(retryPolicy.retryWhen("look-up of the largest change id"))
+                .flatMap(new Func1<Long, Observable<FetchResult>>() {
+                    @Override
+                    public Observable<FetchResult> call(final Long largestChangeId) {
+                        return fetchDocuments(log, googleDriveService, documentDownloader, ioScheduler,
+                                retryPolicy, metrics, Arrays.asList(documents))
+                                .doOnCompleted(new Action0() {
+                                    @Override
+                                    public void call() {
+                                        manifest.setLargestChangeId(largestChangeId);
+                                    }
+                                });
+                    }
+                });
+    }
+
+    private Observable<FetchResult>
+    fetchChangedDocuments(final Log log, final GoogleDriveService googleDriveService,
+                          final DocumentDownloader documentDownloader, final Manifest manifest,
+                          final Scheduler ioScheduler, final RetryPolicy retryPolicy, final FetchMetrics metrics,
+                          final Document[] documents) {
+        final long changeId = manifest.getLargestChangeId();
+
+        return Async.fromCallable(new Callable<ChangeSet>() {
+            @Override
+            public ChangeSet call() throws Exception {
+                log.info(String.format("Looking-up changes since: %d", changeId));
+                final long start = System.nanoTime();
+                try {
+                    return googleDriveService.retrieveChangesSince(changeId);
+                } finally {
+                    metrics.time(FetchMetrics.Phase.LOOKUP, start);
+                }
+            }
+        }, ioScheduler)
+                .retryWhen(retryPolicy.retryWhen("look-up of changes"))
+                .flatMap(new Func1<ChangeSet, Observable<FetchResult>>() {
+                    @Override
+                    public Observable<FetchResult> call(final ChangeSet changeSet) {
+                        final List<FetchResult> unchanged = Lists.newArrayList();
+                        final List<Document> changed = Lists.newArrayList();
+
+                        for (final Document document : documents) {
+                            final List<FetchResult> results = getUnchangedResults(manifest, changeSet, document);
+                            if (results != null) {
+                                unchanged.addAll(results);
+                            } else {
+                                changed.add(document);
+                            }
+                        }
+                        log.debug(String.format("%d changes found, %d documents to fetch",
+                                changeSet.fileIds.size(), changed.size()));
+
+                        return Observable.merge(
+                                Observable.from(unchanged),
+                                fetchDocuments(log, googleDriveService, documentDownloader, ioScheduler,
+                                        retryPolicy, metrics, changed))
+                                .doOnCompleted(new Action0() {
+                                    @Override
+                                    public void call() {
+                                        manifest.setLargestChangeId(changeSet.largestChangeId);
+                                    }
+                                });
+                    }
+                });
+    }
+
+    /**
+     * @return the results of a document not affected by the given changes, or
+     * null if any of its formats needs to be fetched again
+     */
+    private List<FetchResult> getUnchangedResults(final Manifest manifest, final ChangeSet changeSet,
+                                                  final Document document) {
+        if (changeSet.titles.contains(document.title)) {
+            return null;
+        }
+
+        final List<FetchResult> results = Lists.newArrayList();
+        final List<Format> formats = getFormats(document.formats);
+        final List<java.io.File> destinations = getDestinations(document);
+        for (int i = 0; i < formats.size(); i++) {
+            final Format format = formats.get(i);
+            final java.io.File destination = destinations.get(i);
+            final Manifest.Entry entry = manifest.get(destination);
+            if (entry == null || !format.mimeType.equals(entry.mimeType) || changeSet.fileIds.contains(entry.fileId)
+                    || !Objects.equal(entry.variant,
+                            Format.HTML.mimeType.equals(format.mimeType) ? postProcessing.getVariant() : null)) {
+                return null;
+            }
+            results.add(new FetchResult(destination.getAbsolutePath(), FetchResult.Status.SKIPPED));
+        }
+        return results;
+    }
+
+    /**
+     * Looks-up the given documents in batches (concurrently), and plans the
+     * downloads of each batch as soon as its look-up completes:  documents
+     * resolving to the same file are downloaded once per format, and the
+     * largest files of the batch are started first.
+     */
+    private Observable<FetchResult> fetchDocuments(final Log log, final GoogleDriveService googleDriveService,
+                                                   final DocumentDownloader documentDownloader,
+                                                   final Scheduler ioScheduler, final RetryPolicy retryPolicy,
+                                                   final FetchMetrics metrics, final List<Document> documents) {
+        // Files are looked-up (and keyed) by title, and each title belongs to
+        // a single batch:  documents sharing a file are always planned together
+        final ListMultimap<String, Document> documentsByTitle = Multimaps.index(documents,
+                new Function<Document, String>() {
+                    @Override
+                    public String apply(Document document) {
+                        return document.title;
+                    }
+                });
+        final List<List<String>> batches = Lists.partition(
+                Lists.newArrayList(documentsByTitle.keySet()), Math.max(1, lookupBatchSize));
+        Collection<Observable<FetchResult>> accumulator = Lists.newArrayListWithExpectedSize(batches.size());
+
+        for (final List<String> batch : batches) {
+            final List<Document> batchDocuments = Lists.newArrayList();
+            for (final String title : batch) {
+                batchDocuments.addAll(documentsByTitle.get(title));
+            }
+            accumulator.add(retrieveFiles(log, googleDriveService, ioScheduler, metrics, batch)
+                    .retryWhen(retryPolicy.retryWhen("look-up of documents"))
+                    .flatMap(new Func1<Map<String, File>, Observable<FetchResult>>() {
+                        @Override
+                        public Observable<FetchResult> call(Map<String, File> files) {
+                            return downloadFiles(log, documentDownloader, batchDocuments, files);
+                        }
+                    }));
+        }
+        return Observable.merge(accumulator);
+    }
+
+    private Observable<Map<String, File>> retrieveFiles(final Log log, final GoogleDriveService googleDriveService,
+                                                       final Scheduler ioScheduler, final FetchMetrics metrics,
+                                                       final List<String> titles) {
+        return Async.fromCallable(new Callable<Map<String, File>>() {
+            @Override
+            public Map<String, File> call() throws Exception {
+                log.info(String.format("Looking-up documents with titles: %s", titles));
+                final long start = System.nanoTime();
+                try {
+                    return googleDriveService.retrieveFilesByTitles(Sets.newLinkedHashSet(titles));
+                } finally {
+                    metrics.time(FetchMetrics.Phase.LOOKUP, start);
+                }
+            }
+        }, ioScheduler);
+    }
+
+    private Observable<FetchResult> downloadFiles(final Log log, final DocumentDownloader documentDownloader,
+                                                  final List<Document> documents, final Map<String, File> files) {
+        Collection<Observable<FetchResult>> accumulator = Lists.newArrayListWithExpectedSize(documents.size());
+
+        final DownloadPlan plan = new DownloadPlan();
+        for (final Document document : documents) {
+            final File file = files.get(document.title);
+            if (file == null) {
+                accumulator.add(Observable.<FetchResult>error(
+                        warn(log, "Cannot find document with title: '%s'", document.title)));
+                continue;
+            }
+            plan.add(file, getActualOutputDirectory(document.outputDirectory), document.title,
+                    getFormats(document.formats));
+        }
+        if (plan.getSavedDownloads() > 0) {
+            log.debug(String.format("%d downloads shared by several documents", plan.getSavedDownloads()));
+        }
+
+        // Subscribed in order, hence queued for the download threads in order
+        for (final File file : plan.getFiles()) {
+            accumulator.add(documentDownloader.download(file, plan.getName(file), plan.getDestinations(file)));
+        }
+        return Observable.merge(accumulator);
+    }
+
+    protected RuntimeException warn(final Log log, final String format, Object... args) {
+        final String message = String.format(format, args);
+
+        log.warn(message);
+        return new RuntimeException(message);
+    }
+
+    private java.io.File getActualOutputDirectory(final java.io.File configuredOutputDirectory) {
+        return (configuredOutputDirectory != null) ? configuredOutputDirectory : outputDirectory;
+    }
+
+    protected List<java.io.File> getDestinations(final Document document) {
+        final List<java.io.File> destinations = Lists.newArrayList();
+        for (final Format format : getFormats(document.formats)) {
+            destinations.add(DocumentDownloader.getDestination(
+                    getActualOutputDirectory(document.outputDirectory), document.title, format.extension));
+        }
+        return destinations;
+    }
+
+    private static List<Format> getFormats(final Format[] configuredFormats) {
+        return (configuredFormats != null && configuredFormats.length > 0)
+                ? Arrays.asList(configuredFormats) : Arrays.asList(Format.HTML);
+    }
+
+    public static final class Document {
+        @Parameter(required = true)
+        public String title;
+
+        @Parameter
+        public java.io.File outputDirectory;
+
+        /**
+         * Formats the document is exported to;  defaults to HTML only.
+         */
+        @Parameter
+        public Format[] formats;
+
+        @Override
+        public String toString() {
+            return "Document{" +
+                    "title='" + title + '\'' +
+                    ", outputDirectory='" + outputDirectory + '\'' +
+                    ", formats=" + Arrays.toString(formats) +
+                    '}';
+        }
+    }
+}
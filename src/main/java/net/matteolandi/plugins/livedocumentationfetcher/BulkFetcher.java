@@ -0,0 +1,151 @@
+package net.matteolandi.plugins.livedocumentationfetcher;
+
+import com.google.api.services.drive.model.File;
+import com.google.api.services.drive.model.FileList;
+import com.google.common.base.Strings;
+import net.matteolandi.plugins.livedocumentationfetcher.googledrive.GoogleDriveService;
+import net.matteolandi.plugins.livedocumentationfetcher.googledrive.GoogleDriveUtils;
+import org.apache.maven.plugin.logging.Log;
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Func1;
+import rx.util.async.Async;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Fetches all the documents contained in a folder, or matching a query.
+ *
+ * Listing and downloading are pipelined:  the documents of a page are
+ * downloaded while the next page is still being retrieved, largest first.
+ *
+ * Documents are saved after their titles;  when two of them would end up with
+ * the same name in the same directory (e.g. same titles, or titles differing
+ * only in characters not allowed in file names), the ones listed later get
+ * their file id appended.
+ */
+public class BulkFetcher {
+    private static final String FOLDER_MIME_TYPE = "application/vnd.google-apps.folder";
+
+    private final Log log;
+    private final GoogleDriveService googleDriveService;
+    private final DocumentDownloader documentDownloader;
+    private final Scheduler ioScheduler;
+    private final RetryPolicy retryPolicy;
+    private final FetchMetrics metrics;
+    private final ConcurrentMap<String, String> claimedNames = new ConcurrentHashMap<String, String>();
+
+    public BulkFetcher(final Log log, final GoogleDriveService googleDriveService,
+                       final DocumentDownloader documentDownloader, final Scheduler ioScheduler,
+                       final RetryPolicy retryPolicy, final FetchMetrics metrics) {
+        this.log = log;
+        this.googleDriveService = googleDriveService;
+        this.documentDownloader = documentDownloader;
+        this.ioScheduler = ioScheduler;
+        this.retryPolicy = retryPolicy;
+        this.metrics = metrics;
+    }
+
+    public Observable<FetchResult> fetch(final String folderId, final java.io.File outputDirectory,
+                                         final boolean hierarchy, final List<Format> formats) {
+        final String query = String.format("%s in parents and trashed = false", GoogleDriveUtils.quote(folderId));
+
+        return listFiles(query, null).flatMap(new Func1<File, Observable<FetchResult>>() {
+            @Override
+            public Observable<FetchResult> call(File file) {
+                if (!isFolder(file)) {
+                    return documentDownloader.download(file, outputDirectory, getName(outputDirectory, file),
+                            formats);
+                }
+                if (!hierarchy) {
+                    return Observable.empty();
+                }
+                return fetch(file.getId(), new java.io.File(outputDirectory, getName(outputDirectory, file)),
+                        hierarchy, formats);
+            }
+        });
+    }
+
+    public Observable<FetchResult> fetch(final String query, final java.io.File outputDirectory,
+                                         final List<Format> formats) {
+        return listFiles(query, null).flatMap(new Func1<File, Observable<FetchResult>>() {
+            @Override
+            public Observable<FetchResult> call(File file) {
+                if (isFolder(file)) {
+                    return Observable.empty();
+                }
+                return documentDownloader.download(file, outputDirectory, getName(outputDirectory, file), formats);
+            }
+        });
+    }
+
+    /**
+     * Emits the files of the given page as soon as it is retrieved, while
+     * (concurrently) moving on to the next one.
+     */
+    private Observable<File> listFiles(final String query, final String pageToken) {
+        return Async.fromCallable(new Callable<FileList>() {
+            @Override
+            public FileList call() throws Exception {
+                log.debug(String.format("Listing documents matching: %s", query));
+                final long start = System.nanoTime();
+                try {
+                    return googleDriveService.retrieveFilesPage(query, pageToken);
+                } finally {
+                    metrics.time(FetchMetrics.Phase.LISTING, start);
+                }
+            }
+        }, ioScheduler)
+                .retryWhen(retryPolicy.retryWhen(String.format("listing of documents matching: %s", query)))
+                .flatMap(new Func1<FileList, Observable<File>>() {
+                    @Override
+                    public Observable<File> call(FileList fileList) {
+                        final Observable<File> files = Observable.from((fileList.getItems() != null)
+                                ? DownloadPlan.LARGEST_FIRST.sortedCopy(fileList.getItems())
+                                : Collections.<File>emptyList());
+                        if (Strings.isNullOrEmpty(fileList.getNextPageToken())) {
+                            return files;
+                        }
+                        return Observable.merge(files, listFiles(query, fileList.getNextPageToken()));
+                    }
+                });
+    }
+
+    private static boolean isFolder(final File file) {
+        return FOLDER_MIME_TYPE.equals(file.getMimeType());
+    }
+
+    /**
+     * Claims the file name of the given document (or folder) within the given
+     * directory, falling back to one carrying its file id if already claimed
+     * by a different one.  Names are compared ignoring case, not to have them
+     * overwrite each other on case-insensitive file systems.
+     */
+    private String getName(final java.io.File outputDirectory, final File file) {
+        final String name = toFileName(file.getTitle());
+        final String key = String.format("%s%s", new java.io.File(outputDirectory.getAbsoluteFile(), name),
+                isFolder(file) ? java.io.File.separator : "").toLowerCase(Locale.ROOT);
+        final String claimant = claimedNames.putIfAbsent(key, file.getId());
+        if (claimant == null || claimant.equals(file.getId())) {
+            return name;
+        }
+
+        final String disambiguated = String.format("%s (%s)", name, file.getId());
+        log.warn(String.format("Name '%s' in '%s' already taken by file id '%s', saving '%s' as: '%s'",
+                name, outputDirectory.getAbsolutePath(), claimant, file.getId(), disambiguated));
+        return disambiguated;
+    }
+
+    /**
+     * Replaces the characters not allowed in file names (on any of the most
+     * common file systems).
+     */
+    static String toFileName(final String title) {
+        return title.replaceAll("[\\\\/:*?\"<>|\\p{Cntrl}]", "_");
+    }
+}
@@ -0,0 +1,171 @@
+package net.matteolandi.plugins.livedocumentationfetcher;
+
+import com.google.api.services.drive.model.File;
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.Striped;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Content addressed cache of exported documents, shared by all the builds
+ * (and modules) running on the same machine.
+ *
+ * Entries are keyed by Drive file id, modification date and export MIME type,
+ * hence never need to be invalidated:  a modified document simply maps to a
+ * new entry.  Threads of the same JVM synchronize through in-memory locks,
+ * while different JVMs through file locks, so that each entry is downloaded
+ * once.
+ */
+public class ContentCache {
+    private static final Striped<Lock> LOCKS = Striped.lock(64);
+    private static final long OVERLAPPING_LOCK_RETRY_MILLIS = 50;
+    private static final String LOCK_SUFFIX = ".lock";
+    private static final String OUTPUTS_DIRECTORY = "outputs";
+
+    public interface Loader {
+        /**
+         * Writes the content of the entry to the given file.
+         */
+        void load(java.io.File target) throws IOException;
+    }
+
+    private final Log log;
+    private final java.io.File cacheDirectory;
+
+    public ContentCache(final Log log, final java.io.File cacheDirectory) {
+        this.log = log;
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    /**
+     * Returns the entry associated with the given export of the given file,
+     * invoking the loader first if the entry is missing.
+     */
+    public java.io.File get(final File file, final String mimeType, final Loader loader) throws IOException {
+        final java.io.File entry = getEntry(file, mimeType);
+        if (entry.exists()) {
+            log.debug(String.format("Cache hit: '%s' (%s)", file.getTitle(), mimeType));
+            return entry;
+        }
+
+        final Lock lock = LOCKS.get(entry.getAbsolutePath());
+        lock.lock();
+        try {
+            final java.io.File directory = entry.getParentFile();
+            if (!directory.mkdirs() && !directory.isDirectory()) {
+                throw new IOException(
+                        String.format("Cannot create cache folder: '%s'", directory.getAbsolutePath()));
+            }
+
+            final FileChannel channel = FileChannel.open(
+                    new java.io.File(directory, entry.getName() + LOCK_SUFFIX).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            try {
+                final FileLock fileLock = acquire(channel);
+                try {
+                    // Some other build might have loaded it while we were waiting
+                    if (!entry.exists()) {
+                        log.debug(String.format("Cache miss: '%s' (%s)", file.getTitle(), mimeType));
+                        loader.load(entry);
+                    }
+                } finally {
+                    fileLock.release();
+                }
+            } finally {
+                channel.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+        return entry;
+    }
+
+    /**
+     * Records that the given output was last materialized from the given
+     * entry, so that it can be restored without knowing which document (or
+     * version) it came from.
+     */
+    public void remember(final java.io.File destination, final java.io.File entry) throws IOException {
+        final java.io.File pointer = getPointer(destination);
+        final java.io.File directory = pointer.getParentFile();
+        if (!directory.mkdirs() && !directory.isDirectory()) {
+            throw new IOException(
+                    String.format("Cannot create cache folder: '%s'", directory.getAbsolutePath()));
+        }
+        Files.write(entry.getName(), pointer, Charsets.UTF_8);
+    }
+
+    /**
+     * Records that the given output was not materialized from any entry (e.g.
+     * it was transformed on its way), and cannot be restored.
+     */
+    public void forget(final java.io.File destination) throws IOException {
+        java.nio.file.Files.deleteIfExists(getPointer(destination).toPath());
+    }
+
+    /**
+     * @return the entry the given output was last materialized from, or null
+     * if unknown (or no longer available)
+     */
+    public java.io.File recall(final java.io.File destination) {
+        final java.io.File pointer = getPointer(destination);
+        if (!pointer.isFile()) {
+            return null;
+        }
+
+        try {
+            final String key = Files.toString(pointer, Charsets.UTF_8).trim();
+            if (key.length() < 2) {
+                return null;
+            }
+            final java.io.File entry = new java.io.File(new java.io.File(cacheDirectory, key.substring(0, 2)), key);
+            return entry.isFile() ? entry : null;
+        } catch (IOException e) {
+            log.debug(String.format("Cannot read cache pointer: '%s'", pointer.getAbsolutePath()));
+            return null;
+        }
+    }
+
+    private java.io.File getPointer(final java.io.File destination) {
+        final String key = Hashing.sha1().hashString(destination.getAbsolutePath(), Charsets.UTF_8).toString();
+        return new java.io.File(new java.io.File(cacheDirectory, OUTPUTS_DIRECTORY), key);
+    }
+
+    public java.io.File getEntry(final File file, final String mimeType) {
+        final String modifiedDate = (file.getModifiedDate() != null) ? file.getModifiedDate().toStringRfc3339() : "";
+        final String key = Hashing.sha1().hashString(
+                file.getId() + "\n" + modifiedDate + "\n" + mimeType, Charsets.UTF_8).toString();
+
+        return new java.io.File(new java.io.File(cacheDirectory, key.substring(0, 2)), key);
+    }
+
+    /**
+     * Blocks until the lock is acquired;  OverlappingFileLockException is
+     * thrown when the lock is held by another class loader of this same JVM
+     * (e.g. a different version of the plugin), in which case we just wait.
+     */
+    private static FileLock acquire(final FileChannel channel) throws IOException {
+        while (true) {
+            try {
+                return channel.lock();
+            } catch (OverlappingFileLockException e) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(OVERLAPPING_LOCK_RETRY_MILLIS);
+                } catch (InterruptedException e1) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for cache lock");
+                }
+            }
+        }
+    }
+}
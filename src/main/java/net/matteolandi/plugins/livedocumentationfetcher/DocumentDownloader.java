@@ -0,0 +1,273 @@
+package net.matteolandi.plugins.livedocumentationfetcher;
+
+import com.google.api.services.drive.model.File;
+import com.google.common.collect.Lists;
+import com.google.common.collect.SetMultimap;
+import net.matteolandi.plugins.livedocumentationfetcher.googledrive.GoogleDriveService;
+import org.apache.maven.plugin.logging.Log;
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Action0;
+import rx.functions.Func0;
+import rx.functions.Func1;
+import rx.util.async.Async;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Downloads already looked-up documents, in all the requested formats.
+ */
+public class DocumentDownloader {
+    private static final String HTML_MIME_TYPE = Format.HTML.mimeType;
+
+    private final Log log;
+    private final GoogleDriveService googleDriveService;
+    private final Manifest manifest;
+    private final Scheduler downloadScheduler;
+    private final Scheduler ioScheduler;
+    private final RetryPolicy retryPolicy;
+    private final DocumentWriter documentWriter;
+    private final ContentCache contentCache;
+    private final FetchMetrics metrics;
+    private final int parallelRanges;
+    private final long parallelRangeThreshold;
+    private final HtmlPostProcessor htmlPostProcessor;
+
+    /**
+     * @param contentCache      null, to download documents straight into
+     *                          their destinations
+     * @param htmlPostProcessor null, to write HTML exports as they are
+     */
+    public DocumentDownloader(final Log log, final GoogleDriveService googleDriveService, final Manifest manifest,
+                              final Scheduler downloadScheduler, final Scheduler ioScheduler,
+                              final RetryPolicy retryPolicy, final DocumentWriter documentWriter,
+                              final ContentCache contentCache, final FetchMetrics metrics, final int parallelRanges,
+                              final long parallelRangeThreshold, final HtmlPostProcessor htmlPostProcessor) {
+        this.log = log;
+        this.googleDriveService = googleDriveService;
+        this.manifest = manifest;
+        this.downloadScheduler = downloadScheduler;
+        this.ioScheduler = ioScheduler;
+        this.retryPolicy = retryPolicy;
+        this.documentWriter = documentWriter;
+        this.contentCache = contentCache;
+        this.metrics = metrics;
+        this.parallelRanges = parallelRanges;
+        this.parallelRangeThreshold = parallelRangeThreshold;
+        this.htmlPostProcessor = htmlPostProcessor;
+    }
+
+    /**
+     * Exports the given file in each of the given formats, in parallel;  each
+     * export is retried independently of the others, resuming from where the
+     * previous attempt stopped whenever possible.  HTML exports referencing
+     * images are only reported once the images have been localized too.
+     */
+    public Observable<FetchResult> download(final File file, final java.io.File outputDirectory, final String name,
+                                            final List<Format> formats) {
+        final DownloadPlan plan = new DownloadPlan();
+        plan.add(file, outputDirectory, name, formats);
+        return download(file, name, plan.getDestinations(file));
+    }
+
+    /**
+     * Like {@link #download(File, java.io.File, String, List)}, but writes each
+     * export to all of its destinations:  the export is downloaded once, and
+     * then copied (or hard-linked) to the destinations not up to date.
+     *
+     * @param destinations the destinations of the given file, by mime type
+     */
+    public Observable<FetchResult> download(final File file, final String name,
+                                            final SetMultimap<String, java.io.File> destinations) {
+        final Collection<Observable<FetchResult>> accumulator =
+                Lists.newArrayListWithExpectedSize(destinations.keySet().size());
+
+        for (final String mimeType : destinations.keySet()) {
+            final ResumableDownload resumableDownload = new ResumableDownload(
+                    log, googleDriveService, documentWriter, ioScheduler, parallelRanges, parallelRangeThreshold);
+            final List<Observable<java.io.File>> images = new CopyOnWriteArrayList<Observable<java.io.File>>();
+            final List<java.io.File> completed = new CopyOnWriteArrayList<java.io.File>();
+            accumulator.add(download(file, name, mimeType, Lists.newArrayList(destinations.get(mimeType)),
+                    resumableDownload, images, completed)
+                    .retryWhen(retryPolicy.retryWhen(String.format("download of '%s' as '%s'", name, mimeType)))
+                    .flatMap(new Func1<List<FetchResult>, Observable<FetchResult>>() {
+                        @Override
+                        public Observable<FetchResult> call(final List<FetchResult> results) {
+                            if (images.isEmpty()) {
+                                record(file, mimeType, completed);
+                                return Observable.from(results);
+                            }
+                            // Outputs referencing images not localized (e.g. for a failed download) are not
+                            // recorded, so that the next execution fetches them again
+                            return Observable.concat(
+                                    Observable.merge(images).ignoreElements().cast(FetchResult.class),
+                                    Observable.defer(new Func0<Observable<FetchResult>>() {
+                                        @Override
+                                        public Observable<FetchResult> call() {
+                                            record(file, mimeType, completed);
+                                            return Observable.from(results);
+                                        }
+                                    }));
+                        }
+                    })
+                    .finallyDo(new Action0() {
+                        @Override
+                        public void call() {
+                            resumableDownload.discard();
+                        }
+                    }));
+        }
+        return Observable.merge(accumulator);
+    }
+
+    private Observable<List<FetchResult>> download(final File file, final String name, final String mimeType,
+                                                   final List<java.io.File> destinations,
+                                                   final ResumableDownload resumableDownload,
+                                                   final List<Observable<java.io.File>> images,
+                                                   final List<java.io.File> completed) {
+        return Async.fromCallable(new Callable<List<FetchResult>>() {
+            @Override
+            public List<FetchResult> call() throws Exception {
+                images.clear();
+                completed.clear();
+                final String downloadUrl = getDownloadUrl(file, mimeType);
+                if (downloadUrl == null) {
+                    warnAndThrow("Cannot export document with title: '%s' as '%s'", name, mimeType);
+                }
+
+                final String variant = getVariant(mimeType);
+                final List<FetchResult> results = Lists.newArrayListWithExpectedSize(destinations.size());
+                final List<java.io.File> outdated = Lists.newArrayListWithExpectedSize(destinations.size());
+                for (final java.io.File destination : destinations) {
+                    createDestinationFolder(destination);
+                    if (manifest.isUpToDate(destination, file, mimeType, variant)) {
+                        log.debug(String.format("Document unchanged since last fetch: '%s'", destination));
+                        manifest.put(destination, file, mimeType, variant);
+                        results.add(new FetchResult(destination.getAbsolutePath(), FetchResult.Status.SKIPPED));
+                    } else {
+                        outdated.add(destination);
+                    }
+                }
+                if (outdated.isEmpty()) {
+                    return results;
+                }
+
+                // Only files stored as they are (not exported) have a known size
+                final Long size = downloadUrl.equals(file.getDownloadUrl()) ? file.getFileSize() : null;
+                final boolean postProcess = variant != null;
+                final MeteredInputStream.Meter meter = new MeteredInputStream.Meter();
+                long start = System.nanoTime();
+                java.io.File source;
+                if (contentCache == null) {
+                    source = resumableDownload.fetch(downloadUrl, size, outdated.get(0), meter);
+                } else {
+                    source = contentCache.get(file, mimeType, new ContentCache.Loader() {
+                        @Override
+                        public void load(java.io.File target) throws IOException {
+                            documentWriter.commit(resumableDownload.fetch(downloadUrl, size, target, meter), target);
+                        }
+                    });
+                }
+
+                for (final java.io.File destination : outdated) {
+                    final boolean written;
+                    if (postProcess) {
+                        // Image references are relative to each destination
+                        written = documentWriter.commit(
+                                htmlPostProcessor.process(source, destination, images), destination);
+                    } else if (contentCache == null && destination == outdated.get(0)) {
+                        written = documentWriter.commit(source, destination);
+                        source = destination;
+                    } else {
+                        written = documentWriter.write(source, destination);
+                    }
+                    if (contentCache != null && postProcess) {
+                        // The cache keeps exports as they are, shared by differently configured builds:
+                        // restoring the destination from it would undo the post-processing
+                        contentCache.forget(destination);
+                    } else if (contentCache != null) {
+                        contentCache.remember(destination, source);
+                    }
+                    completed.add(destination);
+
+                    final FetchResult result = new FetchResult(destination.getAbsolutePath(),
+                            written ? FetchResult.Status.CREATED : FetchResult.Status.UNCHANGED);
+                    // Whatever was not spent waiting for the bytes was spent writing them;  bytes are
+                    // accounted to the first destination only, the others being served locally
+                    metrics.recordDocument(result, meter.bytes, meter.nanos, System.nanoTime() - start - meter.nanos);
+                    results.add(result);
+                    meter.bytes = 0;
+                    meter.nanos = 0;
+                    start = System.nanoTime();
+                }
+                return results;
+            }
+        }, downloadScheduler);
+    }
+
+    /**
+     * @return how exports of the given type are transformed on their way to
+     * their destinations, or null if they are not
+     */
+    private String getVariant(final String mimeType) {
+        return (htmlPostProcessor != null && HTML_MIME_TYPE.equals(mimeType)) ? htmlPostProcessor.getVariant() : null;
+    }
+
+    /**
+     * Records the given, complete, outputs of the given file into the
+     * manifest.
+     */
+    private void record(final File file, final String mimeType, final List<java.io.File> destinations) {
+        final String variant = getVariant(mimeType);
+        for (final java.io.File destination : destinations) {
+            manifest.put(destination, file, mimeType, variant);
+        }
+    }
+
+    private void warnAndThrow(final String format, Object... args) throws RuntimeException {
+        final String message = String.format(format, args);
+
+        log.warn(message);
+        throw new RuntimeException(message);
+    }
+
+    /**
+     * @return the export link for the given MIME type or, for files stored
+     * as they are, their download URL if they already are of that type;
+     * null, if the file cannot be had in the given MIME type
+     */
+    private static String getDownloadUrl(final File file, final String mimeType) {
+        final Map<String, String> exportLinks = file.getExportLinks();
+        if (exportLinks != null) {
+            if (exportLinks.containsKey(mimeType)) {
+                return exportLinks.get(mimeType);
+            }
+        }
+
+        return mimeType.equals(file.getMimeType()) ? file.getDownloadUrl() : null;
+    }
+
+    private void createDestinationFolder(final java.io.File destination) throws IOException {
+        final java.io.File outputDirectory = destination.getParentFile();
+        if (!outputDirectory.exists()) {
+            // Other formats of the same document might be creating it right now
+            if (!outputDirectory.mkdirs() && !outputDirectory.isDirectory()) {
+                final String message =
+                            String.format("Cannot create destination folder: '%s'", outputDirectory.getAbsolutePath());
+                log.warn(message);
+                throw new IOException(message);
+            }
+        }
+    }
+
+    public static java.io.File getDestination(final java.io.File outputDirectory, final String name,
+                                              final String extension) {
+        final String fileName = String.format("%s%s", name, extension);
+        return new java.io.File(outputDirectory.getAbsolutePath(), fileName);
+    }
+}
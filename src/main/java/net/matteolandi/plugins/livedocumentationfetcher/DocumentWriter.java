@@ -0,0 +1,318 @@
+package net.matteolandi.plugins.livedocumentationfetcher;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Closeables;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Writes downloaded documents to disk.
+ *
+ * Content is first streamed into a temporary file living next to the
+ * destination, and then moved over the destination itself:  this way the
+ * destination is either left untouched or completely replaced, even if the
+ * download fails halfway (or the build is killed).  The temporary file can
+ * also be filled in over several attempts, and out of order, when downloads
+ * are resumed or split into ranges.
+ *
+ * The destination is not touched at all if its content did not change, so
+ * that its modification time does not trigger any work in the phases that
+ * follow.
+ *
+ * Files already on disk (e.g. shared cache entries) are copied into their
+ * destinations, unless hard-linking is enabled:  the source is then made
+ * read-only first, for changes to any of the links not to silently alter all
+ * the others.
+ *
+ * Once closed, destinations are left untouched:  work still running past the
+ * end of a fetch (e.g. a download not stopped by the deadline of the fetch)
+ * cannot replace them after the plugin has moved on.
+ */
+public class DocumentWriter {
+    private static final String TEMP_SUFFIX = ".part";
+    private static final String DIGEST_ALGORITHM = "SHA-1";
+
+    private final int bufferSize;
+    private final boolean fsync;
+    private final boolean hardLink;
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private boolean closed;
+
+    public DocumentWriter(final int bufferSize, final boolean fsync) {
+        this(bufferSize, fsync, false);
+    }
+
+    public DocumentWriter(final int bufferSize, final boolean fsync, final boolean hardLink) {
+        this.bufferSize = bufferSize;
+        this.fsync = fsync;
+        this.hardLink = hardLink;
+    }
+
+    /**
+     * Consumes, and closes, the given stream.
+     *
+     * @return false if the destination already had the same content (and
+     * was consequently left untouched), true otherwise
+     */
+    public boolean write(final InputStream inputStream, final java.io.File destination) throws IOException {
+        final Path target = destination.toPath();
+        Path temp = null;
+        try {
+            temp = createTemp(target);
+            final DigestInputStream digestInputStream = new DigestInputStream(inputStream, newMessageDigest());
+            copy(digestInputStream, temp);
+
+            final HashCode hashCode = HashCode.fromBytes(digestInputStream.getMessageDigest().digest());
+            if (hasContent(destination, Files.size(temp), hashCode)) {
+                return false;
+            }
+            replace(temp, target);
+            return true;
+        } finally {
+            Closeables.close(inputStream, true);
+            if (temp != null) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    /**
+     * Replaces the destination with a copy of the given file or, if enabled,
+     * a (read-only) hard link to it where possible.
+     *
+     * @return false if the destination already had the same content (and
+     * was consequently left untouched), true otherwise
+     */
+    public boolean write(final java.io.File source, final java.io.File destination) throws IOException {
+        if (destination.isFile()
+                && destination.length() == source.length()
+                && (Files.isSameFile(source.toPath(), destination.toPath())
+                    || com.google.common.io.Files.equal(source, destination))) {
+            return false;
+        }
+
+        final Path target = destination.toPath();
+        final Path temp = createTemp(target);
+        try {
+            if (!hardLink || !link(source, temp)) {
+                // Into the temporary file, for the copy to get its permissions instead of those of the source
+                com.google.common.io.Files.copy(source, temp.toFile());
+            }
+            replace(temp, target);
+            return true;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Replaces the given temporary file with a hard link to the given source,
+     * which gets made read-only.
+     *
+     * @return false if links are not supported (the temporary file is then
+     * left in place)
+     */
+    private static boolean link(final java.io.File source, final Path temp) throws IOException {
+        if (source.canWrite() && !source.setWritable(false, false)) {
+            return false;
+        }
+        Files.delete(temp);
+        try {
+            Files.createLink(temp, source.toPath());
+            return true;
+        } catch (IOException e) {
+            Files.createFile(temp);
+            return false;
+        } catch (UnsupportedOperationException e) {
+            Files.createFile(temp);
+            return false;
+        }
+    }
+
+    /**
+     * Creates an empty part file next to the destination, for
+     * {@link #writeAt(InputStream, java.io.File, AtomicLong)} to fill in and
+     * {@link #commit(java.io.File, java.io.File)} to move over it.
+     */
+    public java.io.File createPart(final java.io.File destination) throws IOException {
+        return createTemp(destination.toPath()).toFile();
+    }
+
+    /**
+     * Consumes, and closes, the given stream, writing it into the given part
+     * file from the given position onwards.
+     *
+     * @param position advanced as bytes get written, so that after a failure
+     *                 it tells where to resume from
+     */
+    public void writeAt(final InputStream inputStream, final java.io.File part, final AtomicLong position)
+            throws IOException {
+        final ReadableByteChannel in = Channels.newChannel(inputStream);
+        final FileChannel out = FileChannel.open(part.toPath(), StandardOpenOption.WRITE);
+        boolean threw = true;
+        try {
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
+            while (in.read(buffer) != -1) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    position.addAndGet(out.write(buffer, position.get()));
+                }
+                buffer.clear();
+            }
+            threw = false;
+        } finally {
+            Closeables.close(out, threw);
+            Closeables.close(inputStream, true);
+        }
+    }
+
+    /**
+     * Drops everything past the given position of the given part file.
+     */
+    public void truncate(final java.io.File part, final long size) throws IOException {
+        final FileChannel channel = FileChannel.open(part.toPath(), StandardOpenOption.WRITE);
+        try {
+            channel.truncate(size);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Moves the given, complete, part file over the destination, or deletes
+     * it if the destination already had the same content.
+     *
+     * @return false if the destination already had the same content (and
+     * was consequently left untouched), true otherwise
+     */
+    public boolean commit(final java.io.File part, final java.io.File destination) throws IOException {
+        try {
+            if (destination.isFile()
+                    && destination.length() == part.length()
+                    && com.google.common.io.Files.equal(part, destination)) {
+                return false;
+            }
+            if (fsync) {
+                final FileChannel channel = FileChannel.open(part.toPath(), StandardOpenOption.WRITE);
+                try {
+                    channel.force(true);
+                } finally {
+                    channel.close();
+                }
+            }
+            replace(part.toPath(), destination.toPath());
+            return true;
+        } finally {
+            Files.deleteIfExists(part.toPath());
+        }
+    }
+
+    /**
+     * Waits for the destinations being replaced, and leaves all the others
+     * untouched from now on.
+     */
+    public void close() {
+        closeLock.writeLock().lock();
+        try {
+            closed = true;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @throws CancellationException if the writer has been closed
+     */
+    private void replace(final Path source, final Path target) throws IOException {
+        closeLock.readLock().lock();
+        try {
+            if (closed) {
+                throw new CancellationException(String.format("Fetch is over, not replacing: '%s'", target));
+            }
+            move(source, target);
+        } finally {
+            closeLock.readLock().unlock();
+        }
+    }
+
+    private void copy(final InputStream inputStream, final Path temp) throws IOException {
+        final ReadableByteChannel in = Channels.newChannel(inputStream);
+        final FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        boolean threw = true;
+        try {
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
+            while (in.read(buffer) != -1 || buffer.position() > 0) {
+                buffer.flip();
+                out.write(buffer);
+                buffer.compact();
+            }
+            if (fsync) {
+                out.force(true);
+            }
+            threw = false;
+        } finally {
+            Closeables.close(out, threw);
+        }
+    }
+
+    private static boolean hasContent(final java.io.File file, final long size, final HashCode hashCode)
+            throws IOException {
+        return file.isFile()
+                && file.length() == size
+                && com.google.common.io.Files.hash(file, Hashing.sha1()).equals(hashCode);
+    }
+
+    private static MessageDigest newMessageDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Unlike {@link Files#createTempFile(Path, String, String, java.nio.file.attribute.FileAttribute[])},
+     * which makes it readable by its owner only, creates the temporary file
+     * with the default permissions (i.e. those dictated by the umask), which
+     * the destination then inherits.
+     */
+    static Path createTemp(final Path target) throws IOException {
+        while (true) {
+            final Path temp = target.resolveSibling(String.format(".%s.%016x%s",
+                    target.getFileName(), ThreadLocalRandom.current().nextLong(), TEMP_SUFFIX));
+            try {
+                return Files.createFile(temp);
+            } catch (FileAlreadyExistsException e) {
+                // Try another name
+            }
+        }
+    }
+
+    static void move(final Path source, final Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package net.matteolandi.plugins.livedocumentationfetcher;
+
+import com.google.api.services.drive.model.File;
+import com.google.common.base.Function;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.SetMultimap;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The downloads needed to materialize a set of documents.
+ *
+ * Each file is exported once per format, however many documents (i.e.
+ * destinations) ask for it;  files are then downloaded largest first, so
+ * that the last downloads to start (once all the slots are busy) are the
+ * quickest ones.
+ */
+public class DownloadPlan {
+    /**
+     * Files whose size is not known in advance (i.e. Google documents,
+     * exported on the fly) keep their relative order, after all the others.
+     */
+    public static final Ordering<File> LARGEST_FIRST = Ordering.<Long>natural().reverse().nullsLast()
+            .onResultOf(new Function<File, Long>() {
+                @Override
+                public Long apply(File file) {
+                    return file.getFileSize();
+                }
+            });
+
+    private final Map<String, File> files = Maps.newLinkedHashMap();
+    private final Map<String, String> names = Maps.newHashMap();
+    private final Map<String, SetMultimap<String, java.io.File>> destinations = Maps.newHashMap();
+    private int requested;
+
+    public void add(final File file, final java.io.File outputDirectory, final String name,
+                    final List<Format> formats) {
+        if (!files.containsKey(file.getId())) {
+            files.put(file.getId(), file);
+            names.put(file.getId(), name);
+            destinations.put(file.getId(), LinkedHashMultimap.<String, java.io.File>create());
+        }
+        for (final Format format : formats) {
+            destinations.get(file.getId()).put(format.mimeType,
+                    DocumentDownloader.getDestination(outputDirectory, name, format.extension));
+            requested++;
+        }
+    }
+
+    /**
+     * @return the files to download, in the order their downloads should be
+     * started
+     */
+    public List<File> getFiles() {
+        return LARGEST_FIRST.sortedCopy(files.values());
+    }
+
+    public String getName(final File file) {
+        return names.get(file.getId());
+    }
+
+    /**
+     * @return the destinations of the given file, by export format
+     */
+    public SetMultimap<String, java.io.File> getDestinations(final File file) {
+        return destinations.get(file.getId());
+    }
+
+    /**
+     * @return the number of (document, format) pairs served by downloads
+     * planned for someone else
+     */
+    public int getSavedDownloads() {
+        int downloads = 0;
+        for (final SetMultimap<String, java.io.File> fileDestinations : destinations.values()) {
+            downloads += fileDestinations.keySet().size();
+        }
+        return requested - downloads;
+    }
+}
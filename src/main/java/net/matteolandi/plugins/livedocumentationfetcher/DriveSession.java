@@ -0,0 +1,154 @@
+package net.matteolandi.plugins.livedocumentationfetcher;
+
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.common.base.Objects;
+import com.google.common.base.Supplier;
+import com.google.common.collect.Maps;
+import net.matteolandi.plugins.livedocumentationfetcher.googledrive.GoogleDriveService;
+import net.matteolandi.plugins.livedocumentationfetcher.googledrive.GoogleDriveUtils;
+import net.matteolandi.plugins.livedocumentationfetcher.googledrive.LocalCachingCredentialStore;
+import org.apache.maven.plugin.logging.Log;
+import rx.Observable;
+import rx.functions.Action1;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Everything that is expensive to set up, and can be shared by all the
+ * executions of the plugin running in the same JVM (i.e. all the modules of
+ * a reactor build):  the HTTP transport and its connection pool, the rate
+ * limiter, the credential store and the authenticated Drive client.
+ *
+ * Sessions are registered under a key derived from the settings they were
+ * created with, and belong to the build they were created by:  the first
+ * execution of a different build (e.g. the next one run by a Maven daemon)
+ * shuts them down, and registers its own.  Those of the last build are shut
+ * down when the JVM exits.
+ */
+public class DriveSession {
+    private static final Map<String, DriveSession> SESSIONS = Maps.newHashMap();
+    private static Object owner;
+    private static Thread shutdownHook;
+
+    public final HttpTransport httpTransport;
+    public final JacksonFactory jsonFactory;
+    public final GoogleDriveUtils googleDriveUtils;
+    public final LocalCachingCredentialStore credentialStore;
+
+    private GoogleDriveService googleDriveService;
+    private Observable<GoogleDriveService> pendingGoogleDriveService;
+
+    public DriveSession(final HttpTransport httpTransport, final JacksonFactory jsonFactory,
+                        final GoogleDriveUtils googleDriveUtils,
+                        final LocalCachingCredentialStore credentialStore) {
+        this.httpTransport = httpTransport;
+        this.jsonFactory = jsonFactory;
+        this.googleDriveUtils = googleDriveUtils;
+        this.credentialStore = credentialStore;
+    }
+
+    /**
+     * Returns the session registered under the given key, creating (and
+     * registering) a new one if missing.
+     *
+     * @param build identifies the build of the calling execution, compared
+     *              (by equality) with the one the registered sessions belong to
+     */
+    public static DriveSession obtain(final Log log, final Object build, final String key,
+                                      final Supplier<DriveSession> factory) {
+        synchronized (SESSIONS) {
+            if (!Objects.equal(build, owner)) {
+                release(log);
+                owner = build;
+            }
+            if (shutdownHook == null) {
+                shutdownHook = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        synchronized (SESSIONS) {
+                            release(log);
+                        }
+                    }
+                }, "drive-session-shutdown");
+                Runtime.getRuntime().addShutdownHook(shutdownHook);
+            }
+
+            final DriveSession existing = SESSIONS.get(key);
+            if (existing != null) {
+                log.debug("Reusing Google Drive session");
+                return existing;
+            }
+
+            final DriveSession session = factory.get();
+            SESSIONS.put(key, session);
+            return session;
+        }
+    }
+
+    /**
+     * Shuts down, and unregisters, all the sessions.
+     */
+    private static void release(final Log log) {
+        for (final DriveSession session : SESSIONS.values()) {
+            session.shutdown(log);
+        }
+        if (!SESSIONS.isEmpty()) {
+            log.debug(String.format("Released %d Google Drive sessions", SESSIONS.size()));
+        }
+        SESSIONS.clear();
+    }
+
+    /**
+     * Returns the Drive client created by a previous execution, or the one
+     * emitted by the given Observable (which is then kept for the executions
+     * that follow).  Executions asking for it while it is still being set up
+     * wait for the same set-up (e.g. not to exchange the authorization code
+     * twice);  failures are not kept, so the next execution tries again.
+     */
+    public synchronized Observable<GoogleDriveService>
+    getGoogleDriveService(final Observable<GoogleDriveService> googleDriveServiceObservable) {
+        if (googleDriveService != null) {
+            return Observable.just(googleDriveService);
+        }
+        if (pendingGoogleDriveService != null) {
+            return pendingGoogleDriveService;
+        }
+        final AtomicReference<Observable<GoogleDriveService>> pending =
+                new AtomicReference<Observable<GoogleDriveService>>();
+        pending.set(googleDriveServiceObservable
+                .doOnNext(new Action1<GoogleDriveService>() {
+                    @Override
+                    public void call(GoogleDriveService service) {
+                        synchronized (DriveSession.this) {
+                            googleDriveService = service;
+                            pendingGoogleDriveService = null;
+                        }
+                    }
+                })
+                .doOnError(new Action1<Throwable>() {
+                    @Override
+                    public void call(Throwable throwable) {
+                        synchronized (DriveSession.this) {
+                            if (pendingGoogleDriveService == pending.get()) {
+                                pendingGoogleDriveService = null;
+                            }
+                        }
+                    }
+                })
+                .cache());
+        pendingGoogleDriveService = pending.get();
+        return pendingGoogleDriveService;
+    }
+
+    private void shutdown(final Log log) {
+        credentialStore.flush();
+        try {
+            httpTransport.shutdown();
+        } catch (IOException e) {
+            log.warn(String.format("Cannot shut down HTTP transport: %s", e.getMessage()), e);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package net.matteolandi.plugins.livedocumentationfetcher;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.maven.plugin.logging.Log;
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Action1;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs the blocking parts of a fetch:  look-ups, listings and downloads.
+ *
+ * The pipeline is the same whatever the engine, a composition of
+ * Observables;  engines differ in the threads their blocking calls are made
+ * from, and in what happens to the work still running once the fetch is
+ * over (e.g. after a failure).
+ */
+public abstract class ExecutionEngine implements Closeable {
+    public static final String RX = "rx";
+    public static final String VIRTUAL_THREADS = "virtual-threads";
+
+    public static final List<String> ENGINES = ImmutableList.of(RX, VIRTUAL_THREADS);
+
+    public abstract String getName();
+
+    /**
+     * @return where downloads run, at most maxConcurrentDownloads at a time
+     */
+    public abstract Scheduler getDownloadScheduler();
+
+    /**
+     * @return where look-ups, listings and the byte ranges of downloads run
+     */
+    public abstract Scheduler getIoScheduler();
+
+    /**
+     * Subscribes to the given results, and waits for them to complete.
+     *
+     * @throws RuntimeException the first failure of the fetch
+     */
+    public abstract void run(Observable<FetchResult> fetchResultsObservable, Action1<FetchResult> action);
+
+    /**
+     * Stops whatever is still running.
+     */
+    @Override
+    public abstract void close();
+
+    /**
+     * @param failFast see {@link VirtualThreadExecutionEngine}
+     * @return the given engine or, if not supported by the running JVM, the
+     * RxJava one
+     */
+    public static ExecutionEngine create(final Log log, final String engine, final int maxConcurrentDownloads,
+                                         final boolean failFast) {
+        if (VIRTUAL_THREADS.equals(engine)) {
+            final ThreadFactory threadFactory = VirtualThreadExecutionEngine.newVirtualThreadFactory();
+            if (threadFactory != null) {
+                return new VirtualThreadExecutionEngine(threadFactory, maxConcurrentDownloads, failFast);
+            }
+            log.warn(String.format("Virtual threads not supported by Java %s, falling back to engine: '%s'",
+                    System.getProperty("java.version"), RX));
+        }
+        return new RxExecutionEngine(maxConcurrentDownloads);
+    }
+}
@@ -0,0 +1,208 @@
+package net.matteolandi.plugins.livedocumentationfetcher;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ConcurrentHashMultiset;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+import com.google.common.io.Files;
+import net.matteolandi.plugins.livedocumentationfetcher.googledrive.DriveStats;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Where the time of an execution goes:  a span for each phase (credential
+ * store creation, Drive service set-up, look-ups, listings, downloads and
+ * writes), bytes downloaded, retries by cause, HTTP status codes and time
+ * spent waiting on the rate limiter.
+ *
+ * At the end of the execution a summary is logged and, optionally, a report
+ * is written as JSON (everything) and CSV (one row per document).
+ */
+public class FetchMetrics {
+    public enum Phase {
+        CREDENTIAL_STORE("credential store"),
+        DRIVE_SERVICE("Drive service"),
+        LOOKUP("look-up"),
+        LISTING("listing"),
+        DOWNLOAD("download"),
+        WRITE("write");
+
+        public final String label;
+
+        Phase(final String label) {
+            this.label = label;
+        }
+    }
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final long startedAt = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private final Map<Phase, AtomicLong> phaseNanos = Maps.newEnumMap(Phase.class);
+    private final Map<Phase, AtomicLong> phaseCounts = Maps.newEnumMap(Phase.class);
+    private final AtomicLong bytes = new AtomicLong();
+    private final ConcurrentHashMultiset<RetryPolicy.Cause> retries = ConcurrentHashMultiset.create();
+    private final Queue<DocumentMetrics> documents = new ConcurrentLinkedQueue<DocumentMetrics>();
+    private DriveStats driveStats;
+    private DriveStats.Snapshot driveStatsAtStart;
+
+    public FetchMetrics() {
+        // Populated once, so that concurrent updates need no locking
+        for (final Phase phase : Phase.values()) {
+            phaseNanos.put(phase, new AtomicLong());
+            phaseCounts.put(phase, new AtomicLong());
+        }
+    }
+
+    /**
+     * Records a span of the given phase, started at the given
+     * {@link System#nanoTime()} and ending now.
+     */
+    public void time(final Phase phase, final long startNanos) {
+        add(phase, System.nanoTime() - startNanos);
+    }
+
+    public void recordRetry(final RetryPolicy.Cause cause) {
+        retries.add(cause);
+    }
+
+    public void recordDocument(final FetchResult result, final long bytes, final long downloadNanos,
+                               final long writeNanos) {
+        this.bytes.addAndGet(bytes);
+        add(Phase.DOWNLOAD, downloadNanos);
+        add(Phase.WRITE, writeNanos);
+        documents.add(new DocumentMetrics(result, bytes, downloadNanos, writeNanos));
+    }
+
+    /**
+     * Starts tracking the requests sent through the given session;  requests
+     * sent before (by other executions) are not accounted.
+     */
+    public synchronized void attach(final DriveStats driveStats) {
+        if (this.driveStats == null) {
+            this.driveStats = driveStats;
+            this.driveStatsAtStart = driveStats.snapshot();
+        }
+    }
+
+    public void log(final Log log) {
+        log.info(String.format("%-20s %8s %10s", "Phase", "Count", "Time (ms)"));
+        for (final Phase phase : Phase.values()) {
+            log.info(String.format("%-20s %8d %10d",
+                    phase.label, phaseCounts.get(phase).get(), toMillis(phaseNanos.get(phase).get())));
+        }
+
+        final DriveStats.Snapshot drive = getDriveStats();
+        log.info(String.format("Elapsed: %d ms, downloaded: %d bytes, rate limiter wait: %d ms",
+                toMillis(System.nanoTime() - startNanos), bytes.get(), toMillis(drive.rateLimiterWaitNanos)));
+        log.info(String.format("Retries: %s, HTTP statuses: %s", retries, drive.statusCodes));
+    }
+
+    /**
+     * Writes {@code <name>.json} and {@code <name>.csv} inside the given
+     * directory.
+     */
+    public void write(final java.io.File directory, final String name) throws IOException {
+        if (!directory.mkdirs() && !directory.isDirectory()) {
+            throw new IOException(
+                    String.format("Cannot create report folder: '%s'", directory.getAbsolutePath()));
+        }
+        writeJson(new java.io.File(directory, name + ".json"));
+        writeCsv(new java.io.File(directory, name + ".csv"));
+    }
+
+    private void writeJson(final java.io.File file) throws IOException {
+        final DriveStats.Snapshot drive = getDriveStats();
+        final JsonGenerator generator = JSON_FACTORY.createJsonGenerator(file, JsonEncoding.UTF8);
+        try {
+            generator.useDefaultPrettyPrinter();
+            generator.writeStartObject();
+            generator.writeNumberField("startedAt", startedAt);
+            generator.writeNumberField("elapsedMillis", toMillis(System.nanoTime() - startNanos));
+            generator.writeObjectFieldStart("phases");
+            for (final Phase phase : Phase.values()) {
+                generator.writeObjectFieldStart(phase.label);
+                generator.writeNumberField("count", phaseCounts.get(phase).get());
+                generator.writeNumberField("millis", toMillis(phaseNanos.get(phase).get()));
+                generator.writeEndObject();
+            }
+            generator.writeEndObject();
+            generator.writeNumberField("bytes", bytes.get());
+            generator.writeObjectFieldStart("retries");
+            for (final RetryPolicy.Cause cause : RetryPolicy.Cause.values()) {
+                generator.writeNumberField(cause.name(), retries.count(cause));
+            }
+            generator.writeEndObject();
+            generator.writeNumberField("rateLimiterWaitMillis", toMillis(drive.rateLimiterWaitNanos));
+            generator.writeObjectFieldStart("httpStatuses");
+            for (final Multiset.Entry<Integer> entry : drive.statusCodes.entrySet()) {
+                generator.writeNumberField(String.valueOf(entry.getElement()), entry.getCount());
+            }
+            generator.writeEndObject();
+            generator.writeArrayFieldStart("documents");
+            for (final DocumentMetrics document : documents) {
+                generator.writeStartObject();
+                generator.writeStringField("path", document.result.path);
+                generator.writeStringField("status", document.result.status.name());
+                generator.writeNumberField("bytes", document.bytes);
+                generator.writeNumberField("downloadMillis", toMillis(document.downloadNanos));
+                generator.writeNumberField("writeMillis", toMillis(document.writeNanos));
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        } finally {
+            generator.close();
+        }
+    }
+
+    private void writeCsv(final java.io.File file) throws IOException {
+        final StringBuilder builder = new StringBuilder("path,status,bytes,downloadMillis,writeMillis\n");
+        for (final DocumentMetrics document : documents) {
+            builder.append('"').append(document.result.path.replace("\"", "\"\"")).append('"')
+                    .append(',').append(document.result.status.name())
+                    .append(',').append(document.bytes)
+                    .append(',').append(toMillis(document.downloadNanos))
+                    .append(',').append(toMillis(document.writeNanos))
+                    .append('\n');
+        }
+        Files.write(builder, file, Charsets.UTF_8);
+    }
+
+    private synchronized DriveStats.Snapshot getDriveStats() {
+        return (driveStats != null) ? driveStats.snapshot().minus(driveStatsAtStart) : DriveStats.Snapshot.EMPTY;
+    }
+
+    private void add(final Phase phase, final long nanos) {
+        phaseNanos.get(phase).addAndGet(nanos);
+        phaseCounts.get(phase).incrementAndGet();
+    }
+
+    private static long toMillis(final long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private static final class DocumentMetrics {
+        final FetchResult result;
+        final long bytes;
+        final long downloadNanos;
+        final long writeNanos;
+
+        DocumentMetrics(final FetchResult result, final long bytes, final long downloadNanos,
+                        final long writeNanos) {
+            this.result = result;
+            this.bytes = bytes;
+            this.downloadNanos = downloadNanos;
+            this.writeNanos = writeNanos;
+        }
+    }
+}
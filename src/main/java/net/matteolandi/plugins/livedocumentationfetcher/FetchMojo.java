@@ -1,246 +1,260 @@
 package net.matteolandi.plugins.livedocumentationfetcher;
 
-import com.google.api.client.http.javanet.NetHttpTransport;
-import com.google.api.client.json.jackson2.JacksonFactory;
-import com.google.api.services.drive.model.File;
+import com.google.common.collect.EnumMultiset;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
-import com.google.common.io.ByteStreams;
-import net.matteolandi.plugins.livedocumentationfetcher.googledrive.GoogleDriveAuthSettings;
-import net.matteolandi.plugins.livedocumentationfetcher.googledrive.GoogleDriveBasedCredentialStore;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Sets;
 import net.matteolandi.plugins.livedocumentationfetcher.googledrive.GoogleDriveService;
-import net.matteolandi.plugins.livedocumentationfetcher.googledrive.GoogleDriveUtils;
-import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
-import rx.Notification;
 import rx.Observable;
 import rx.functions.Action1;
+import rx.functions.Func0;
 import rx.functions.Func1;
-import rx.schedulers.Schedulers;
-import rx.util.async.Async;
 
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.Collection;
-import java.util.Map;
-import java.util.concurrent.Callable;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Mojo(name = "fetch", defaultPhase = LifecyclePhase.GENERATE_RESOURCES)
-public class FetchMojo extends AbstractMojo {
-    private static final int MAX_RETRIES = 5;
-    private static final int MAX_RETRY_DELAY_MILLIS = 5000;
-    private static final String MIME_TYPE = "text/html";
-    private static final String EXTENSION = ".html";
+public class FetchMojo extends AbstractFetchMojo {
+    public static final String ONLINE_MODE = "online";
+    public static final String OFFLINE_MODE = "offline";
+    public static final String STALE_WHILE_REVALIDATE_MODE = "stale-while-revalidate";
 
-    @Parameter(required = true)
-    public GoogleDriveAuthSettings googleDriveAuth;
+    private static final List<String> MODES =
+            ImmutableList.of(ONLINE_MODE, OFFLINE_MODE, STALE_WHILE_REVALIDATE_MODE);
 
-    @Parameter(defaultValue = "${project.build.directory}")
-    public java.io.File outputDirectory;
+    /**
+     * One of "online" (always check Google Drive), "offline" (only use the
+     * documents fetched so far, without accessing Google Drive at all) or
+     * "stale-while-revalidate" (use the documents fetched less than
+     * maxAgeMillis ago as they are, and refresh the others within
+     * revalidationBudgetMillis);  Maven offline mode implies "offline".
+     */
+    @Parameter(property = "liveDocumentationFetcher.mode", defaultValue = ONLINE_MODE)
+    public String mode;
 
-    @Parameter(required = true)
-    public Document[] documents;
+    @Parameter(defaultValue = "${settings.offline}", readonly = true)
+    public boolean offline;
+
+    /**
+     * How long a fetched document is considered fresh, in
+     * stale-while-revalidate mode.
+     */
+    @Parameter(defaultValue = "3600000")
+    public long maxAgeMillis;
+
+    /**
+     * How long to wait for stale documents to be refreshed, in
+     * stale-while-revalidate mode;  documents not refreshed in time are used
+     * as they are.
+     */
+    @Parameter(defaultValue = "30000")
+    public long revalidationBudgetMillis;
 
     @Override
     public void execute() throws MojoExecutionException {
         final Log log = getLog();
-        final NetHttpTransport httpTransport = new NetHttpTransport();
-        final JacksonFactory jsonFactory = new JacksonFactory();
-        final GoogleDriveUtils googleDriveUtils = new GoogleDriveUtils();
-
-        final Observable<GoogleDriveBasedCredentialStore> credentialStoreObservable =
-                getGoogleDriveBasedCredentialStoreObservable(log, httpTransport, jsonFactory, googleDriveUtils);
-        final Observable<GoogleDriveService> driveServiceObservable =
-                getGoogleDriveServiceObservable(
-                        log, httpTransport, jsonFactory, googleDriveUtils, credentialStoreObservable);
-        final Observable<String> createdFilesObservable =
-                getCreatedFilesObservable(log, driveServiceObservable, documents);
-
-        createdFilesObservable.doOnError(new Action1<Throwable>() {
-            @Override
-            public void call(Throwable throwable) {
-                log.error(throwable);
-            }
-        }).toBlocking().forEach(new Action1<String>() {
-            @Override
-            public void call(String s) {
-                log.info(String.format("Created: '%s'", s));
-            }
-        });
-    }
-
-    private Observable<GoogleDriveBasedCredentialStore>
-    getGoogleDriveBasedCredentialStoreObservable(final Log log, final NetHttpTransport httpTransport,
-                                                 final JacksonFactory jsonFactory,
-                                                 final GoogleDriveUtils googleDriveUtils) {
-        return GoogleDriveBasedCredentialStore.observe(
-                log, httpTransport, jsonFactory, googleDriveUtils,
-                googleDriveAuth.storageAccountEmail, googleDriveAuth.storagePrivateKeyPath)
-                .subscribeOn(Schedulers.io())
-                .retryWhen(new RetryWithDelayWhenNetworkException(MAX_RETRIES, MAX_RETRY_DELAY_MILLIS));
-    }
+        if (skip) {
+            log.info("Skipping fetch of documents");
+            return;
+        }
+        if (hasNothingToFetch()) {
+            log.info("No documents, folders or queries to fetch");
+            return;
+        }
 
-    private Observable<GoogleDriveService>
-    getGoogleDriveServiceObservable(final Log log, final NetHttpTransport httpTransport,
-                                    final JacksonFactory jsonFactory, final GoogleDriveUtils googleDriveUtils,
-                                    final Observable<GoogleDriveBasedCredentialStore> credentialStoreObservable) {
-        return credentialStoreObservable.flatMap(new Func1<GoogleDriveBasedCredentialStore, Observable<GoogleDriveService>>() {
-            @Override
-            public Observable<GoogleDriveService> call(final GoogleDriveBasedCredentialStore credentialStore) {
-                return GoogleDriveService.observe(
-                        log, httpTransport, jsonFactory, credentialStore, googleDriveUtils,
-                        googleDriveAuth.clientId, googleDriveAuth.clientSecret, googleDriveAuth.authCode)
-                        .subscribeOn(Schedulers.io())
-                        .retryWhen(new RetryWithDelayWhenNetworkException(MAX_RETRIES, MAX_RETRY_DELAY_MILLIS));
+        checkSettings();
+        final String actualMode = getActualMode(log);
+        final ExecutionEngine executionEngine = newExecutionEngine(log);
+        final FetchMetrics metrics = new FetchMetrics();
+        final RetryPolicy retryPolicy = new RetryPolicy(log, retry, metrics);
+        final Manifest manifest = Manifest.load(log, outputDirectory);
+        final DocumentWriter documentWriter = new DocumentWriter(writeBufferSize, fsync, hardLinkCacheEntries);
+        final ContentCache contentCache = useSharedCache ? new ContentCache(log, cacheDirectory) : null;
+        final LocalCopies localCopies = new LocalCopies(log, contentCache, documentWriter);
+        final Multiset<FetchResult.Status> statuses = EnumMultiset.create(FetchResult.Status.class);
+
+        final AtomicReference<DriveSession> sessionReference = new AtomicReference<DriveSession>();
+        try {
+            final Observable<FetchResult> fetchResultsObservable;
+            if (OFFLINE_MODE.equals(actualMode)) {
+                fetchResultsObservable = getOfflineResultsObservable(log, localCopies);
+            } else {
+                final Observable<GoogleDriveService> driveServiceObservable =
+                        getLazyGoogleDriveServiceObservable(log, retryPolicy, metrics, sessionReference);
+
+                fetchResultsObservable = STALE_WHILE_REVALIDATE_MODE.equals(actualMode)
+                        ? getStaleWhileRevalidateResultsObservable(log, driveServiceObservable, manifest,
+                                executionEngine, retryPolicy, metrics, documentWriter, contentCache, localCopies)
+                        : getFetchResultsObservable(log, driveServiceObservable, manifest, executionEngine,
+                                retryPolicy, metrics, documentWriter, contentCache, documents, true);
             }
-        });
-    }
 
-    private Observable<String>
-    getCreatedFilesObservable(final Log log, final Observable<GoogleDriveService> googleDriveServiceObservable,
-                              final Document[] documents) {
-        return googleDriveServiceObservable.flatMap(new Func1<GoogleDriveService, Observable<String>>() {
-            @Override
-            public Observable<String> call(GoogleDriveService googleDriveService) {
-                Collection<Observable<String>> accumulator = Lists.newArrayListWithExpectedSize(documents.length);
-
-                for (final Document document : documents) {
-                    final Observable<String> createdFileObservable =
-                            downloadFile(log, googleDriveService, document)
-                                    .retryWhen(new RetryWithDelayWhenNetworkException(
-                                            MAX_RETRIES, MAX_RETRY_DELAY_MILLIS));
-
-                    accumulator.add(createdFileObservable);
+            executionEngine.run(fetchResultsObservable.doOnError(new Action1<Throwable>() {
+                @Override
+                public void call(Throwable throwable) {
+                    log.error(throwable);
                 }
-                return Observable.merge(accumulator);
-            }
-        });
-    }
-
-    private Observable<String> downloadFile(final Log log, final GoogleDriveService googleDriveService,
-                                            final Document document) {
-        return Async.fromCallable(new Callable<String>() {
-            @Override
-            public String call() throws Exception {
-                log.info(String.format("Looking-up document with title: '%s'", document.title));
-
-                final File file = googleDriveService.retrieveFileByTitle(document.title);
-                if (file == null) {
-                    warnAndThrow(log, "Cannot find document with title: '%s'", document.title);
+            }), new Action1<FetchResult>() {
+                @Override
+                public void call(FetchResult result) {
+                    statuses.add(result.status);
+                    log.info(String.format("%s: '%s'", result.status.label, result.path));
                 }
-
-                final String downloadUrl = getDownloadUrl(file);
-                if (downloadUrl == null) {
-                    warnAndThrow(log, "Cannot export document with title: '%s'", document.title);
-                }
-
-                log.debug(String.format("Downloading: '%s'", downloadUrl));
-                final InputStream inputStream
-                        = googleDriveService.fetchFileByDownloadUrl(downloadUrl);
-
-                final java.io.File actualOutputDirectory = getActualOutputDirectory(document);
-                final java.io.File destination
-                        = getDestinationFile(log, actualOutputDirectory, document.title, EXTENSION);
-
-                ByteStreams.copy(inputStream, new FileOutputStream(destination));
-
-                return destination.getAbsolutePath();
+            });
+        } finally {
+            executionEngine.close();
+            // Downloads past the revalidation budget may still be running:  they must not replace documents
+            // once this execution is over, and its manifest saved
+            documentWriter.close();
+            saveManifest(log, manifest);
+            if (sessionReference.get() != null) {
+                sessionReference.get().credentialStore.flush();
             }
-        }, Schedulers.io());
-    }
+            reportMetrics(log, metrics);
+        }
 
-    private void warnAndThrow(final Log log, final String format, Object... args) throws RuntimeException {
-        final String message = String.format(format, args);
+        log.info(String.format(
+                "Fetched %d documents: %d refreshed, %d unchanged, %d skipped (not modified), %d stale",
+                statuses.size(), statuses.count(FetchResult.Status.CREATED),
+                statuses.count(FetchResult.Status.UNCHANGED), statuses.count(FetchResult.Status.SKIPPED),
+                statuses.count(FetchResult.Status.STALE)));
+    }
 
-        log.warn(message);
-        throw new RuntimeException(message);
+    private String getActualMode(final Log log) throws MojoExecutionException {
+        if (!MODES.contains(mode)) {
+            throw new MojoExecutionException(String.format("Unknown mode: '%s', expected one of: %s", mode, MODES));
+        }
+        if (offline && !OFFLINE_MODE.equals(mode)) {
+            log.info("Maven is offline, using the documents fetched so far");
+            return OFFLINE_MODE;
+        }
+        return mode;
     }
 
-    private static String getDownloadUrl(final File file) {
-        final Map<String, String> exportLinks = file.getExportLinks();
-        if (exportLinks != null) {
-            if (exportLinks.containsKey(MIME_TYPE)) {
-                return exportLinks.get(MIME_TYPE);
+    /**
+     * Documents fetched less than maxAgeMillis ago are used straight away;
+     * the others (together with folders and queries) are fetched again,
+     * falling back to the copies fetched so far when Drive cannot be reached
+     * or does not reply within revalidationBudgetMillis.
+     */
+    private Observable<FetchResult>
+    getStaleWhileRevalidateResultsObservable(final Log log,
+                                             final Observable<GoogleDriveService> googleDriveServiceObservable,
+                                             final Manifest manifest, final ExecutionEngine executionEngine,
+                                             final RetryPolicy retryPolicy, final FetchMetrics metrics,
+                                             final DocumentWriter documentWriter, final ContentCache contentCache,
+                                             final LocalCopies localCopies) {
+        final List<java.io.File> fresh = Lists.newArrayList();
+        final List<java.io.File> stale = Lists.newArrayList();
+        final List<Document> revalidated = Lists.newArrayList();
+
+        for (final Document document : documents) {
+            final List<java.io.File> destinations = getDestinations(document);
+            if (areFresh(manifest, destinations)) {
+                fresh.addAll(destinations);
+            } else {
+                stale.addAll(destinations);
+                revalidated.add(document);
             }
         }
+        log.debug(String.format("%d documents fresh, %d to revalidate", fresh.size(), stale.size()));
 
-        return file.getDownloadUrl();
-    }
+        if (revalidated.isEmpty() && folders.length == 0 && queries.length == 0) {
+            // Nothing to revalidate, not even the Drive client is needed
+            return serveLocalCopies(log, localCopies, fresh, FetchResult.Status.SKIPPED);
+        }
 
-    private java.io.File getActualOutputDirectory(final Document document) {
-        return (document.outputDirectory != null) ? document.outputDirectory : outputDirectory;
+        final Set<String> revalidatedPaths = Sets.newConcurrentHashSet();
+        final Observable<FetchResult> revalidation = getFetchResultsObservable(
+                log, googleDriveServiceObservable, manifest, executionEngine, retryPolicy, metrics, documentWriter,
+                contentCache, revalidated.toArray(new Document[revalidated.size()]),
+                revalidated.size() == documents.length)
+                .takeUntil(Observable.timer(revalidationBudgetMillis, TimeUnit.MILLISECONDS)
+                        .doOnNext(new Action1<Long>() {
+                            @Override
+                            public void call(Long ignored) {
+                                log.warn(String.format("Revalidation took longer than %d ms, using stale documents",
+                                        revalidationBudgetMillis));
+                            }
+                        }))
+                .onErrorResumeNext(new Func1<Throwable, Observable<FetchResult>>() {
+                    @Override
+                    public Observable<FetchResult> call(Throwable throwable) {
+                        log.warn(String.format("Cannot revalidate documents, using stale ones: %s",
+                                throwable.getMessage()));
+                        return Observable.empty();
+                    }
+                })
+                .doOnNext(new Action1<FetchResult>() {
+                    @Override
+                    public void call(FetchResult result) {
+                        revalidatedPaths.add(result.path);
+                    }
+                });
+
+        return Observable.merge(
+                serveLocalCopies(log, localCopies, fresh, FetchResult.Status.SKIPPED),
+                Observable.concat(revalidation, Observable.defer(new Func0<Observable<FetchResult>>() {
+                    @Override
+                    public Observable<FetchResult> call() {
+                        final List<java.io.File> leftovers = Lists.newArrayList();
+                        for (final java.io.File destination : stale) {
+                            if (!revalidatedPaths.contains(destination.getAbsolutePath())) {
+                                leftovers.add(destination);
+                            }
+                        }
+                        return serveLocalCopies(log, localCopies, leftovers, FetchResult.Status.STALE);
+                    }
+                })));
     }
 
-    private static java.io.File getDestinationFile(final Log log, final java.io.File outputDirectory,
-                                                   final String title, final String extension) throws Exception {
-        if (!outputDirectory.exists()) {
-            if (!outputDirectory.mkdir()) {
-                final String message =
-                            String.format("Cannot create destination folder: '%s'", outputDirectory.getAbsolutePath());
-                log.warn(message);
-                throw new IOException(message);
-            }
+    private Observable<FetchResult> getOfflineResultsObservable(final Log log, final LocalCopies localCopies) {
+        for (final Folder folder : folders) {
+            log.info(String.format("Offline, keeping the documents fetched so far from folder: '%s'", folder.id));
+        }
+        for (final Query query : queries) {
+            log.info(String.format("Offline, keeping the documents fetched so far matching: %s", query.q));
         }
-        final String name = String.format("%s%s", title, extension);
-        return new java.io.File(outputDirectory.getAbsolutePath(), name);
-    }
-
-    public static final class Document {
-        @Parameter(required = true)
-        public String title;
-
-        @Parameter
-        public java.io.File outputDirectory;
 
-        @Override
-        public String toString() {
-            return "Document{" +
-                    "title='" + title + '\'' +
-                    ", outputDirectory='" + outputDirectory + '\'' +
-                    '}';
+        final List<java.io.File> destinations = Lists.newArrayList();
+        for (final Document document : documents) {
+            destinations.addAll(getDestinations(document));
         }
+        return serveLocalCopies(log, localCopies, destinations, FetchResult.Status.SKIPPED);
     }
 
-    /**
-     * Adapted from this SO answer:  http://stackoverflow.com/a/25292833
-     */
-    public static class RetryWithDelayWhenNetworkException
-            implements Func1<Observable<? extends Notification<?>>, Observable<?>> {
-        private final int maxRetries;
-        private final int maxRetryDelayMillis;
-        private int retryCount;
-
-        public RetryWithDelayWhenNetworkException(final int maxRetries, final int maxRetryDelayMillis) {
-            this.maxRetries = maxRetries;
-            this.maxRetryDelayMillis = maxRetryDelayMillis;
-            this.retryCount = 0;
+    private Observable<FetchResult> serveLocalCopies(final Log log, final LocalCopies localCopies,
+                                                     final List<java.io.File> destinations,
+                                                     final FetchResult.Status status) {
+        Collection<Observable<FetchResult>> accumulator = Lists.newArrayListWithExpectedSize(destinations.size());
+
+        for (final java.io.File destination : destinations) {
+            try {
+                accumulator.add(Observable.just(localCopies.serve(destination, status)));
+            } catch (IOException e) {
+                accumulator.add(Observable.<FetchResult>error(
+                        warn(log, "Cannot use document fetched so far: %s", e.getMessage())));
+            }
         }
+        return Observable.merge(accumulator);
+    }
 
-        @Override
-        public Observable<?> call(Observable<? extends Notification<?>> attempts) {
-            return attempts
-                    .flatMap(new Func1<Notification<?>, Observable<?>>() {
-                        @Override
-                        public Observable<?> call(Notification errorNotification) {
-                            if (errorNotification.getThrowable() instanceof IOException) {
-                                if (++retryCount < maxRetries) {
-                                    // When this Observable calls onNext, the original
-                                    // Observable will be retried (i.e. re-subscribed).
-
-                                    return Observable.timer(
-                                            (long) (Math.random() * maxRetryDelayMillis), TimeUnit.MILLISECONDS);
-                                }
-                            }
-
-                            // Max retries hit. Just pass the error along.
-                            return Observable.error(errorNotification.getThrowable());
-                        }
-                    });
+    private boolean areFresh(final Manifest manifest, final List<java.io.File> destinations) {
+        for (final java.io.File destination : destinations) {
+            if (!manifest.isFresh(destination, maxAgeMillis)) {
+                return false;
+            }
         }
+        return true;
     }
 }
@@ -0,0 +1,32 @@
+package net.matteolandi.plugins.livedocumentationfetcher;
+
+public final class FetchResult {
+    public enum Status {
+        CREATED("Created"),
+        UNCHANGED("Unchanged"),
+        SKIPPED("Skipped"),
+        STALE("Stale");
+
+        public final String label;
+
+        Status(final String label) {
+            this.label = label;
+        }
+    }
+
+    public final String path;
+    public final Status status;
+
+    public FetchResult(final String path, final Status status) {
+        this.path = path;
+        this.status = status;
+    }
+
+    @Override
+    public String toString() {
+        return "FetchResult{" +
+                "path='" + path + '\'' +
+                ", status=" + status +
+                '}';
+    }
+}
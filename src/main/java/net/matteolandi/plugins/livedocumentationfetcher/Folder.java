@@ -0,0 +1,36 @@
+package net.matteolandi.plugins.livedocumentationfetcher;
+
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.util.Arrays;
+
+/**
+ * Drive folder whose documents are all fetched.
+ */
+public final class Folder {
+    @Parameter(required = true)
+    public String id;
+
+    @Parameter
+    public java.io.File outputDirectory;
+
+    /**
+     * When enabled, sub-folders are fetched as well, into sub-directories
+     * named after them.
+     */
+    @Parameter
+    public boolean hierarchy;
+
+    @Parameter
+    public Format[] formats;
+
+    @Override
+    public String toString() {
+        return "Folder{" +
+                "id='" + id + '\'' +
+                ", outputDirectory='" + outputDirectory + '\'' +
+                ", hierarchy=" + hierarchy +
+                ", formats=" + Arrays.toString(formats) +
+                '}';
+    }
+}
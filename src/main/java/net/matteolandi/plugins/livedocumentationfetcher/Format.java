@@ -0,0 +1,32 @@
+package net.matteolandi.plugins.livedocumentationfetcher;
+
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Format documents are exported to.
+ */
+public final class Format {
+    public static final Format HTML = new Format("text/html", ".html");
+
+    @Parameter(required = true)
+    public String mimeType;
+
+    @Parameter(required = true)
+    public String extension;
+
+    public Format() {
+    }
+
+    public Format(final String mimeType, final String extension) {
+        this.mimeType = mimeType;
+        this.extension = extension;
+    }
+
+    @Override
+    public String toString() {
+        return "Format{" +
+                "mimeType='" + mimeType + '\'' +
+                ", extension='" + extension + '\'' +
+                '}';
+    }
+}
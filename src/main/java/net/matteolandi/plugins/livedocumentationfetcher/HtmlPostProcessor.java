@@ -0,0 +1,378 @@
+package net.matteolandi.plugins.livedocumentationfetcher;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Closeables;
+import rx.Observable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Locale;
+
+/**
+ * Transforms HTML exports on their way to the destination.
+ *
+ * Documents are streamed through a minimal tokenizer, never loaded as a
+ * whole:  text is copied as it is, and only tags (and the content of style
+ * blocks) are buffered.  Style blocks are kept, minified or stripped, and
+ * images are replaced by local copies, downloaded in the background while
+ * the rest of the document is still being processed.
+ */
+public class HtmlPostProcessor {
+    private static final String SRC = "src";
+    private static final String STYLE = "style";
+    private static final String SCRIPT = "script";
+    private static final String IMG = "img";
+
+    private final DocumentWriter documentWriter;
+    private final String styles;
+    private final String variant;
+    private final ImageLocalizer imageLocalizer;
+
+    /**
+     * @param imageLocalizer null, to leave images where they are
+     */
+    public HtmlPostProcessor(final DocumentWriter documentWriter, final PostProcessingSettings settings,
+                             final ImageLocalizer imageLocalizer) {
+        this.documentWriter = documentWriter;
+        this.styles = settings.styles;
+        this.variant = settings.getVariant();
+        this.imageLocalizer = imageLocalizer;
+    }
+
+    /**
+     * @see PostProcessingSettings#getVariant()
+     */
+    public String getVariant() {
+        return variant;
+    }
+
+    /**
+     * Writes the processed source into a part file next to the destination,
+     * for {@link DocumentWriter#commit(java.io.File, java.io.File)} to move
+     * over it.
+     *
+     * @param images receives the downloads of the images referenced by the
+     *               document, which might still be running once this returns
+     * @return the part file
+     */
+    public java.io.File process(final java.io.File source, final java.io.File destination,
+                                final Collection<Observable<java.io.File>> images) throws IOException {
+        final java.io.File part = documentWriter.createPart(destination);
+        final Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(source), Charsets.UTF_8));
+        boolean threw = true;
+        try {
+            final Writer writer =
+                    new BufferedWriter(new OutputStreamWriter(new FileOutputStream(part), Charsets.UTF_8));
+            try {
+                new Tokenizer(reader, writer, destination.getAbsoluteFile().getParentFile(), images).run();
+            } finally {
+                Closeables.close(writer, true);
+            }
+            threw = false;
+            return part;
+        } finally {
+            Closeables.close(reader, true);
+            if (threw && !part.delete()) {
+                part.deleteOnExit();
+            }
+        }
+    }
+
+    private final class Tokenizer {
+        private final Reader reader;
+        private final Writer writer;
+        private final java.io.File folder;
+        private final Collection<Observable<java.io.File>> images;
+
+        Tokenizer(final Reader reader, final Writer writer, final java.io.File folder,
+                  final Collection<Observable<java.io.File>> images) {
+            this.reader = reader;
+            this.writer = writer;
+            this.folder = folder;
+            this.images = images;
+        }
+
+        void run() throws IOException {
+            int c;
+            while ((c = reader.read()) != -1) {
+                if (c != '<') {
+                    writer.write(c);
+                    continue;
+                }
+
+                final int next = reader.read();
+                if (next == -1) {
+                    writer.write(c);
+                } else if (next == '!') {
+                    copyDeclaration();
+                } else if (Character.isLetter(next) || next == '/' || next == '?') {
+                    tag((char) next);
+                } else {
+                    // A stray '<', not a tag
+                    writer.write(c);
+                    writer.write(next);
+                }
+            }
+            writer.flush();
+        }
+
+        /**
+         * Comments, and doctypes, are copied verbatim.
+         */
+        private void copyDeclaration() throws IOException {
+            writer.write("<!");
+            final String terminator = startsWith("--") ? "-->" : ">";
+            if (terminator.length() > 1) {
+                writer.write("--");
+            }
+            final StringBuilder tail = new StringBuilder();
+            int c;
+            while ((c = reader.read()) != -1) {
+                writer.write(c);
+                tail.append((char) c);
+                if (tail.length() > terminator.length()) {
+                    tail.deleteCharAt(0);
+                }
+                if (terminator.contentEquals(tail)) {
+                    return;
+                }
+            }
+        }
+
+        private void tag(final char first) throws IOException {
+            final String tag = readTag(first);
+            final String name = getName(tag);
+
+            if (STYLE.equals(name) && !PostProcessingSettings.KEEP_STYLES.equals(styles)) {
+                final StringBuilder closingTag = new StringBuilder();
+                final String css = readRawText(STYLE, closingTag);
+                if (PostProcessingSettings.MINIFY_STYLES.equals(styles)) {
+                    writer.write(tag);
+                    writer.write(minify(css));
+                    writer.write(closingTag.toString());
+                }
+            } else if (SCRIPT.equals(name) || STYLE.equals(name)) {
+                final StringBuilder closingTag = new StringBuilder();
+                writer.write(tag);
+                writer.write(readRawText(name, closingTag));
+                writer.write(closingTag.toString());
+            } else if (IMG.equals(name) && imageLocalizer != null) {
+                writer.write(localize(tag));
+            } else {
+                writer.write(tag);
+            }
+        }
+
+        /**
+         * @return the whole tag, brackets included
+         */
+        private String readTag(final char first) throws IOException {
+            final StringBuilder tag = new StringBuilder("<").append(first);
+            char quote = 0;
+            int c;
+            while ((c = reader.read()) != -1) {
+                tag.append((char) c);
+                if (quote != 0) {
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (c == '"' || c == '\'') {
+                    quote = (char) c;
+                } else if (c == '>') {
+                    break;
+                }
+            }
+            return tag.toString();
+        }
+
+        /**
+         * Reads the content of an element whose content is not markup, and its
+         * closing tag (as it is, e.g. "&lt;/STYLE &gt;"), if any.
+         */
+        private String readRawText(final String name, final StringBuilder closingTag) throws IOException {
+            final String closing = "</" + name;
+            final StringBuilder text = new StringBuilder();
+            int c;
+            while ((c = reader.read()) != -1) {
+                text.append((char) c);
+                if (endsWithIgnoreCase(text, closing)) {
+                    closingTag.append(text, text.length() - closing.length(), text.length());
+                    text.setLength(text.length() - closing.length());
+                    while ((c = reader.read()) != -1) {
+                        // Whitespace, at most, before the end of the closing tag
+                        closingTag.append((char) c);
+                        if (c == '>') {
+                            break;
+                        }
+                    }
+                    break;
+                }
+            }
+            return text.toString();
+        }
+
+        private String localize(final String tag) {
+            final int[] value = findAttributeValue(tag, SRC);
+            if (value == null) {
+                return tag;
+            }
+            final boolean quoted = tag.charAt(value[0]) == '"' || tag.charAt(value[0]) == '\'';
+            final String url = (quoted ? tag.substring(value[0] + 1, value[1] - 1) : tag.substring(value[0], value[1]))
+                    .replace("&amp;", "&");
+            if (!imageLocalizer.accepts(url)) {
+                return tag;
+            }
+
+            images.add(imageLocalizer.localize(url));
+            final String path = folder.toPath().relativize(imageLocalizer.getFile(url).toPath())
+                    .toString().replace(java.io.File.separatorChar, '/');
+            return tag.substring(0, value[0]) + '"' + path + '"' + tag.substring(value[1]);
+        }
+
+        private boolean startsWith(final String prefix) throws IOException {
+            reader.mark(prefix.length());
+            for (int i = 0; i < prefix.length(); i++) {
+                if (reader.read() != prefix.charAt(i)) {
+                    reader.reset();
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static boolean endsWithIgnoreCase(final StringBuilder text, final String suffix) {
+        final int start = text.length() - suffix.length();
+        if (start < 0) {
+            return false;
+        }
+        for (int i = 0; i < suffix.length(); i++) {
+            if (Character.toLowerCase(text.charAt(start + i)) != suffix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Scans the attributes of the given tag, the same way tags are read:
+     * names are only looked for outside of quoted values.
+     *
+     * @return the start and end of the value (quotes included) of the given
+     * attribute, or null if the tag has no such attribute, or no value for it
+     */
+    static int[] findAttributeValue(final String tag, final String attribute) {
+        int i = 1 + getName(tag).length();
+        while (i < tag.length()) {
+            final char c = tag.charAt(i);
+            if (Character.isWhitespace(c) || c == '/') {
+                i++;
+                continue;
+            }
+            if (c == '>') {
+                return null;
+            }
+
+            final int nameStart = i;
+            while (i < tag.length() && !isAttributeNameEnd(tag.charAt(i))) {
+                i++;
+            }
+            final String name = tag.substring(nameStart, i);
+            while (i < tag.length() && Character.isWhitespace(tag.charAt(i))) {
+                i++;
+            }
+            if (i == tag.length() || tag.charAt(i) != '=') {
+                // No value
+                continue;
+            }
+            i++;
+            while (i < tag.length() && Character.isWhitespace(tag.charAt(i))) {
+                i++;
+            }
+
+            final int valueStart = i;
+            if (i < tag.length() && (tag.charAt(i) == '"' || tag.charAt(i) == '\'')) {
+                final int end = tag.indexOf(tag.charAt(i), i + 1);
+                if (end == -1) {
+                    // Unterminated, the tag was cut short
+                    return null;
+                }
+                i = end + 1;
+            } else {
+                while (i < tag.length() && !Character.isWhitespace(tag.charAt(i)) && tag.charAt(i) != '>') {
+                    i++;
+                }
+            }
+            if (name.equalsIgnoreCase(attribute)) {
+                return (i > valueStart) ? new int[]{valueStart, i} : null;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isAttributeNameEnd(final char c) {
+        return Character.isWhitespace(c) || c == '=' || c == '>' || c == '/';
+    }
+
+    private static String getName(final String tag) {
+        int end = 1;
+        while (end < tag.length() && Character.isLetterOrDigit(tag.charAt(end))) {
+            end++;
+        }
+        return tag.substring(1, end).toLowerCase(Locale.US);
+    }
+
+    /**
+     * Drops comments, and whitespace wherever it does not matter.
+     */
+    static String minify(final String css) {
+        final StringBuilder minified = new StringBuilder(css.length());
+        boolean space = false;
+        for (int i = 0; i < css.length(); i++) {
+            final char c = css.charAt(i);
+            if (c == '/' && i + 1 < css.length() && css.charAt(i + 1) == '*') {
+                final int end = css.indexOf("*/", i + 2);
+                i = (end == -1) ? css.length() : end + 1;
+                space = true;
+            } else if (Character.isWhitespace(c)) {
+                space = true;
+            } else if (c == '"' || c == '\'') {
+                final int end = css.indexOf(c, i + 1);
+                appendSpace(minified, space, c);
+                minified.append(css, i, (end == -1) ? css.length() : end + 1);
+                i = (end == -1) ? css.length() : end;
+                space = false;
+            } else {
+                if (c == '}' && minified.length() > 0 && minified.charAt(minified.length() - 1) == ';') {
+                    minified.setLength(minified.length() - 1);
+                }
+                appendSpace(minified, space, c);
+                minified.append(c);
+                space = false;
+            }
+        }
+        return minified.toString();
+    }
+
+    private static void appendSpace(final StringBuilder minified, final boolean space, final char next) {
+        if (!space || minified.length() == 0 || isPunctuation(next)) {
+            return;
+        }
+        final char previous = minified.charAt(minified.length() - 1);
+        if (!isPunctuation(previous) && previous != ':') {
+            minified.append(' ');
+        }
+    }
+
+    private static boolean isPunctuation(final char c) {
+        return c == '{' || c == '}' || c == ';' || c == ',' || c == '>';
+    }
+}
@@ -0,0 +1,208 @@
+package net.matteolandi.plugins.livedocumentationfetcher;
+
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpRequestFactory;
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import net.matteolandi.plugins.livedocumentationfetcher.http.ContentLengthCheckingInputStream;
+import org.apache.maven.plugin.logging.Log;
+import rx.Observable;
+import rx.Observer;
+import rx.Scheduler;
+import rx.util.async.Async;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Downloads the images referenced by documents into a local folder.
+ *
+ * Images are named after (a hash of) their URL, so that each of them is
+ * downloaded once however many documents reference it, and not at all if a
+ * previous execution already did.  Downloads start as soon as an image is
+ * found, and run on the download scheduler, retried like documents are.
+ *
+ * Images are requested without the Drive credentials (documents can
+ * reference any host), and only from the configured sources:  URL prefixes
+ * whose host can start with a "*." wildcard, e.g.
+ * "https://*.googleusercontent.com/".
+ */
+public class ImageLocalizer {
+    private static final Set<String> EXTENSIONS = ImmutableSet.of(".png", ".jpg", ".jpeg", ".gif", ".svg", ".webp");
+    private static final Pattern SOURCE = Pattern.compile("(https?)://(\\*\\.)?([^/:*]+)(?::(\\d+))?(/.*)?");
+    private static final Observer<Object> NOTHING = new Observer<Object>() {
+        @Override
+        public void onCompleted() {
+        }
+
+        @Override
+        public void onError(Throwable e) {
+        }
+
+        @Override
+        public void onNext(Object ignored) {
+        }
+    };
+
+    private final Log log;
+    private final HttpRequestFactory requestFactory;
+    private final List<String> sources;
+    private final Scheduler downloadScheduler;
+    private final RetryPolicy retryPolicy;
+    private final DocumentWriter documentWriter;
+    private final java.io.File directory;
+    private final ConcurrentMap<String, Observable<java.io.File>> downloads = Maps.newConcurrentMap();
+
+    /**
+     * @param requestFactory not authorized to access Drive
+     * @param sources        where images can be downloaded from, see
+     *                       {@link #isValidSource(String)}
+     */
+    public ImageLocalizer(final Log log, final HttpRequestFactory requestFactory, final List<String> sources,
+                          final Scheduler downloadScheduler, final RetryPolicy retryPolicy,
+                          final DocumentWriter documentWriter, final java.io.File directory) {
+        this.log = log;
+        this.requestFactory = requestFactory;
+        this.sources = sources;
+        this.downloadScheduler = downloadScheduler;
+        this.retryPolicy = retryPolicy;
+        this.documentWriter = documentWriter;
+        this.directory = directory;
+    }
+
+    /**
+     * @return true if the given source is a URL prefix, http(s) only, whose
+     * host is either a name or a "*." wildcard followed by a name
+     */
+    public static boolean isValidSource(final String source) {
+        return source != null && SOURCE.matcher(source).matches();
+    }
+
+    /**
+     * @return true if the image at the given URL comes from one of the
+     * configured sources, and can be localized
+     */
+    public boolean accepts(final String url) {
+        final URI uri;
+        try {
+            uri = new URI(url);
+        } catch (URISyntaxException e) {
+            return false;
+        }
+        if (uri.getScheme() == null || uri.getHost() == null) {
+            return false;
+        }
+        for (final String source : sources) {
+            if (matches(source, uri)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Starts downloading the image at the given URL, unless already started.
+     *
+     * @return the download, emitting the local copy of the image once
+     * complete
+     */
+    public Observable<java.io.File> localize(final String url) {
+        final Observable<java.io.File> existing = downloads.get(url);
+        if (existing != null) {
+            return existing;
+        }
+
+        final Observable<java.io.File> download = download(url, getFile(url))
+                .retryWhen(retryPolicy.retryWhen(String.format("download of image '%s'", url)))
+                .cache();
+        final Observable<java.io.File> raced = downloads.putIfAbsent(url, download);
+        if (raced != null) {
+            return raced;
+        }
+        // Failures are reported to whoever waits for the image
+        download.subscribe(NOTHING);
+        return download;
+    }
+
+    /**
+     * @return where the image at the given URL is (going to be) downloaded
+     */
+    public java.io.File getFile(final String url) {
+        return new java.io.File(directory, getFileName(url));
+    }
+
+    private Observable<java.io.File> download(final String url, final java.io.File file) {
+        return Async.fromCallable(new Callable<java.io.File>() {
+            @Override
+            public java.io.File call() throws Exception {
+                if (file.isFile()) {
+                    log.debug(String.format("Image already downloaded: '%s'", file));
+                    return file;
+                }
+                if (!directory.mkdirs() && !directory.isDirectory()) {
+                    throw new IOException(
+                            String.format("Cannot create images folder: '%s'", directory.getAbsolutePath()));
+                }
+
+                log.debug(String.format("Downloading image: '%s'", url));
+                documentWriter.write(ContentLengthCheckingInputStream.getContent(
+                        requestFactory.buildGetRequest(new GenericUrl(url)).execute()), file);
+                return file;
+            }
+        }, downloadScheduler);
+    }
+
+    private static boolean matches(final String source, final URI uri) {
+        final Matcher matcher = SOURCE.matcher(source);
+        if (!matcher.matches() || !matcher.group(1).equalsIgnoreCase(uri.getScheme())) {
+            return false;
+        }
+        final String host = uri.getHost().toLowerCase(Locale.US);
+        final String sourceHost = matcher.group(3).toLowerCase(Locale.US);
+        if (matcher.group(2) != null ? !host.endsWith("." + sourceHost) : !host.equals(sourceHost)) {
+            return false;
+        }
+        final int port = (matcher.group(4) != null)
+                ? Integer.parseInt(matcher.group(4)) : getDefaultPort(matcher.group(1));
+        if (port != ((uri.getPort() != -1) ? uri.getPort() : getDefaultPort(uri.getScheme()))) {
+            return false;
+        }
+        final String path = Strings.isNullOrEmpty(uri.getRawPath()) ? "/" : uri.getRawPath();
+        return path.startsWith(Strings.isNullOrEmpty(matcher.group(5)) ? "/" : matcher.group(5));
+    }
+
+    private static int getDefaultPort(final String scheme) {
+        return "https".equalsIgnoreCase(scheme) ? 443 : 80;
+    }
+
+    private static String getFileName(final String url) {
+        final String hash = Hashing.sha1().hashString(url, Charsets.UTF_8).toString();
+        return hash + getExtension(url);
+    }
+
+    private static String getExtension(final String url) {
+        try {
+            final String path = new URI(url).getPath();
+            if (path != null && path.lastIndexOf('.') > path.lastIndexOf('/')) {
+                final String extension = path.substring(path.lastIndexOf('.')).toLowerCase(Locale.US);
+                if (EXTENSIONS.contains(extension)) {
+                    return extension;
+                }
+            }
+        } catch (URISyntaxException e) {
+            // Named after the hash alone
+        }
+        return "";
+    }
+}
@@ -0,0 +1,49 @@
+package net.matteolandi.plugins.livedocumentationfetcher;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.IOException;
+
+/**
+ * Serves documents from the outputs of previous executions or, when those
+ * are missing, from the shared content cache;  Google Drive is never
+ * accessed.
+ */
+public class LocalCopies {
+    private final Log log;
+    private final ContentCache contentCache;
+    private final DocumentWriter documentWriter;
+
+    /**
+     * @param contentCache null, if the shared content cache is disabled
+     */
+    public LocalCopies(final Log log, final ContentCache contentCache, final DocumentWriter documentWriter) {
+        this.log = log;
+        this.contentCache = contentCache;
+        this.documentWriter = documentWriter;
+    }
+
+    /**
+     * @param status reported when the output of a previous execution is still
+     *               in place
+     */
+    public FetchResult serve(final java.io.File destination, final FetchResult.Status status) throws IOException {
+        if (destination.isFile()) {
+            return new FetchResult(destination.getAbsolutePath(), status);
+        }
+
+        final java.io.File entry = (contentCache != null) ? contentCache.recall(destination) : null;
+        if (entry == null) {
+            throw new IOException(String.format("No local copy of: '%s'", destination.getAbsolutePath()));
+        }
+
+        final java.io.File directory = destination.getParentFile();
+        if (!directory.mkdirs() && !directory.isDirectory()) {
+            throw new IOException(
+                    String.format("Cannot create destination folder: '%s'", directory.getAbsolutePath()));
+        }
+        log.debug(String.format("Restoring from cache: '%s'", destination.getAbsolutePath()));
+        return new FetchResult(destination.getAbsolutePath(), documentWriter.write(entry, destination)
+                ? FetchResult.Status.CREATED : FetchResult.Status.UNCHANGED);
+    }
+}
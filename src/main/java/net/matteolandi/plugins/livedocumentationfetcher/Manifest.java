@@ -0,0 +1,306 @@
+package net.matteolandi.plugins.livedocumentationfetcher;
+
+import com.google.api.client.util.DateTime;
+import com.google.api.services.drive.model.File;
+import com.google.common.base.Objects;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of the documents fetched so far, so that the next execution of
+ * the plugin can skip those which have not been modified since.
+ *
+ * The manifest is read (and written) with the streaming JSON API, instead of
+ * data binding:  it is the first thing every execution does, and setting up
+ * an ObjectMapper costs more than the whole up-to-date check.
+ */
+public class Manifest {
+    public static final String FILE_NAME = ".live-documentation-fetcher.json";
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final Log log;
+    private final java.io.File file;
+    private final Map<String, Entry> entries;
+    private volatile Long largestChangeId;
+    private volatile boolean modified;
+
+    private Manifest(final Log log, final java.io.File file, final Map<String, Entry> entries,
+                     final Long largestChangeId) {
+        this.log = log;
+        this.file = file;
+        this.entries = new ConcurrentHashMap<String, Entry>(entries);
+        this.largestChangeId = largestChangeId;
+    }
+
+    public static Manifest load(final Log log, final java.io.File outputDirectory) {
+        final java.io.File file = new java.io.File(outputDirectory, FILE_NAME);
+        final Manifest empty = new Manifest(log, file, new ConcurrentHashMap<String, Entry>(), null);
+        if (!file.exists()) {
+            log.debug(String.format("Cannot find manifest: '%s'", file.getAbsolutePath()));
+            return empty;
+        }
+
+        try {
+            final Contents contents = read(file);
+            return new Manifest(log, file, contents.entries, contents.largestChangeId);
+        } catch (IOException e) {
+            log.warn(String.format("Cannot read manifest, all documents will be fetched again: %s",
+                    e.getMessage()));
+            return empty;
+        }
+    }
+
+    /**
+     * @param variant how the export was transformed on its way to the
+     *                destination (e.g. the post-processing settings), or null
+     */
+    public boolean isUpToDate(final java.io.File destination, final File file, final String mimeType,
+                              final String variant) {
+        final Entry entry = entries.get(destination.getAbsolutePath());
+        return entry != null && destination.exists() && entry.matches(file, mimeType, variant);
+    }
+
+    /**
+     * Returns the entry of a previously fetched document, provided that its
+     * output still exists.
+     */
+    public Entry get(final java.io.File destination) {
+        final Entry entry = entries.get(destination.getAbsolutePath());
+        return (entry != null && destination.exists()) ? entry : null;
+    }
+
+    /**
+     * Tells whether a previously fetched document was fetched (or found
+     * unchanged) no longer than the given amount of time ago.
+     */
+    public boolean isFresh(final java.io.File destination, final long maxAgeMillis) {
+        final Entry entry = get(destination);
+        return entry != null && entry.fetchedAt != null
+                && System.currentTimeMillis() - entry.fetchedAt <= maxAgeMillis;
+    }
+
+    public Long getLargestChangeId() {
+        return largestChangeId;
+    }
+
+    public void setLargestChangeId(final Long largestChangeId) {
+        this.largestChangeId = largestChangeId;
+        this.modified = true;
+    }
+
+    public void put(final java.io.File destination, final File file, final String mimeType, final String variant) {
+        entries.put(destination.getAbsolutePath(), Entry.of(destination, file, mimeType, variant));
+        modified = true;
+    }
+
+    /**
+     * Writes the manifest to disk, unless nothing changed since it was loaded.
+     */
+    public void save() throws IOException {
+        if (!modified) {
+            log.debug(String.format("Manifest unchanged: '%s'", file.getAbsolutePath()));
+            return;
+        }
+
+        final java.io.File directory = file.getParentFile();
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException(
+                    String.format("Cannot create manifest folder: '%s'", directory.getAbsolutePath()));
+        }
+
+        final Contents contents = new Contents();
+        contents.entries = entries;
+        contents.largestChangeId = largestChangeId;
+        write(file, contents);
+        modified = false;
+        log.debug(String.format("Saved manifest: '%s'", file.getAbsolutePath()));
+    }
+
+    private static Contents read(final java.io.File file) throws IOException {
+        final JsonParser parser = JSON_FACTORY.createJsonParser(file);
+        try {
+            final Contents contents = new Contents();
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = parser.getCurrentName();
+                final JsonToken value = parser.nextToken();
+                if ("entries".equals(name) && value == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        final String path = parser.getCurrentName();
+                        expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+                        contents.entries.put(path, readEntry(parser));
+                    }
+                } else if ("largestChangeId".equals(name)) {
+                    contents.largestChangeId = readLong(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return contents;
+        } finally {
+            parser.close();
+        }
+    }
+
+    private static Entry readEntry(final JsonParser parser) throws IOException {
+        final Entry entry = new Entry();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            parser.nextToken();
+            if ("fileId".equals(name)) {
+                entry.fileId = readString(parser);
+            } else if ("modifiedDate".equals(name)) {
+                entry.modifiedDate = readString(parser);
+            } else if ("etag".equals(name)) {
+                entry.etag = readString(parser);
+            } else if ("md5Checksum".equals(name)) {
+                entry.md5Checksum = readString(parser);
+            } else if ("mimeType".equals(name)) {
+                entry.mimeType = readString(parser);
+            } else if ("variant".equals(name)) {
+                entry.variant = readString(parser);
+            } else if ("path".equals(name)) {
+                entry.path = readString(parser);
+            } else if ("fetchedAt".equals(name)) {
+                entry.fetchedAt = readLong(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return entry;
+    }
+
+    private static String readString(final JsonParser parser) throws IOException {
+        return (parser.getCurrentToken() == JsonToken.VALUE_NULL) ? null : parser.getText();
+    }
+
+    private static Long readLong(final JsonParser parser) throws IOException {
+        return (parser.getCurrentToken() == JsonToken.VALUE_NULL) ? null : parser.getLongValue();
+    }
+
+    private static void expect(final JsonParser parser, final JsonToken actual, final JsonToken expected)
+            throws JsonParseException {
+        if (actual != expected) {
+            throw new JsonParseException(String.format("Expected %s, found %s", expected, actual),
+                    parser.getCurrentLocation());
+        }
+    }
+
+    /**
+     * Writes a temporary file first, and then moves it over the manifest, so
+     * that a build killed halfway does not leave a truncated one behind.
+     */
+    private static void write(final java.io.File file, final Contents contents) throws IOException {
+        final Path temp = DocumentWriter.createTemp(file.toPath());
+        try {
+            writeContents(temp.toFile(), contents);
+            DocumentWriter.move(temp, file.toPath());
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void writeContents(final java.io.File file, final Contents contents) throws IOException {
+        final JsonGenerator generator = JSON_FACTORY.createJsonGenerator(file, JsonEncoding.UTF8);
+        try {
+            generator.writeStartObject();
+            generator.writeObjectFieldStart("entries");
+            for (final Map.Entry<String, Entry> each : contents.entries.entrySet()) {
+                final Entry entry = each.getValue();
+                generator.writeObjectFieldStart(each.getKey());
+                generator.writeStringField("fileId", entry.fileId);
+                generator.writeStringField("modifiedDate", entry.modifiedDate);
+                generator.writeStringField("etag", entry.etag);
+                generator.writeStringField("md5Checksum", entry.md5Checksum);
+                generator.writeStringField("mimeType", entry.mimeType);
+                generator.writeStringField("variant", entry.variant);
+                generator.writeStringField("path", entry.path);
+                writeLongField(generator, "fetchedAt", entry.fetchedAt);
+                generator.writeEndObject();
+            }
+            generator.writeEndObject();
+            writeLongField(generator, "largestChangeId", contents.largestChangeId);
+            generator.writeEndObject();
+        } finally {
+            generator.close();
+        }
+    }
+
+    private static void writeLongField(final JsonGenerator generator, final String name, final Long value)
+            throws IOException {
+        if (value == null) {
+            generator.writeNullField(name);
+        } else {
+            generator.writeNumberField(name, value);
+        }
+    }
+
+    public static class Contents {
+        public Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+        public Long largestChangeId;
+    }
+
+    public static class Entry {
+        public String fileId;
+        public String modifiedDate;
+        public String etag;
+        public String md5Checksum;
+        public String mimeType;
+        public String variant;
+        public String path;
+        public Long fetchedAt;
+
+        static Entry of(final java.io.File destination, final File file, final String mimeType,
+                        final String variant) {
+            final Entry entry = new Entry();
+            entry.fileId = file.getId();
+            entry.modifiedDate = toString(file.getModifiedDate());
+            entry.etag = file.getEtag();
+            entry.md5Checksum = file.getMd5Checksum();
+            entry.mimeType = mimeType;
+            entry.variant = variant;
+            entry.path = destination.getAbsolutePath();
+            entry.fetchedAt = System.currentTimeMillis();
+            return entry;
+        }
+
+        boolean matches(final File file, final String mimeType, final String variant) {
+            return Objects.equal(fileId, file.getId())
+                    && Objects.equal(modifiedDate, toString(file.getModifiedDate()))
+                    && Objects.equal(etag, file.getEtag())
+                    && Objects.equal(md5Checksum, file.getMd5Checksum())
+                    && Objects.equal(this.mimeType, mimeType)
+                    && Objects.equal(this.variant, variant);
+        }
+
+        private static String toString(final DateTime dateTime) {
+            return (dateTime != null) ? dateTime.toStringRfc3339() : null;
+        }
+
+        @Override
+        public String toString() {
+            return "Entry{" +
+                    "fileId='" + fileId + '\'' +
+                    ", modifiedDate='" + modifiedDate + '\'' +
+                    ", etag='" + etag + '\'' +
+                    ", md5Checksum='" + md5Checksum + '\'' +
+                    ", mimeType='" + mimeType + '\'' +
+                    ", variant='" + variant + '\'' +
+                    ", path='" + path + '\'' +
+                    ", fetchedAt=" + fetchedAt +
+                    '}';
+        }
+    }
+}
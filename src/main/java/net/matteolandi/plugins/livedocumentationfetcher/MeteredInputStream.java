@@ -0,0 +1,49 @@
+package net.matteolandi.plugins.livedocumentationfetcher;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts the bytes read from the wrapped stream, and the time spent waiting
+ * for them.
+ */
+public class MeteredInputStream extends FilterInputStream {
+    /**
+     * Accumulates the readings of one or more streams (e.g. of all the
+     * attempts made to download the same document).
+     */
+    public static final class Meter {
+        long bytes;
+        long nanos;
+    }
+
+    private final Meter meter;
+
+    public MeteredInputStream(final InputStream in, final Meter meter) {
+        super(in);
+        this.meter = meter;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final long start = System.nanoTime();
+        final int b = super.read();
+        meter.nanos += System.nanoTime() - start;
+        if (b != -1) {
+            meter.bytes++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        final long start = System.nanoTime();
+        final int count = super.read(b, off, len);
+        meter.nanos += System.nanoTime() - start;
+        if (count > 0) {
+            meter.bytes += count;
+        }
+        return count;
+    }
+}
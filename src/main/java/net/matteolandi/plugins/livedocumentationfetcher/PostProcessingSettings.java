@@ -0,0 +1,70 @@
+package net.matteolandi.plugins.livedocumentationfetcher;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * How HTML exports are transformed before being written.
+ */
+public final class PostProcessingSettings {
+    public static final String KEEP_STYLES = "keep";
+    public static final String MINIFY_STYLES = "minify";
+    public static final String STRIP_STYLES = "strip";
+
+    public static final List<String> STYLES = ImmutableList.of(KEEP_STYLES, MINIFY_STYLES, STRIP_STYLES);
+
+    /**
+     * One of "keep", "minify" or "strip":  what to do with the style blocks
+     * of HTML exports.
+     */
+    @Parameter
+    public String styles = KEEP_STYLES;
+
+    /**
+     * When enabled, the images referenced by HTML exports are downloaded into
+     * imagesDirectory, and referenced from there.
+     */
+    @Parameter
+    public boolean localizeImages;
+
+    /**
+     * Where images are downloaded to, shared by all the documents;  defaults
+     * to the "images" folder inside outputDirectory.
+     */
+    @Parameter
+    public java.io.File imagesDirectory;
+
+    /**
+     * Where images can be localized from:  URL prefixes, whose host can start
+     * with a "*." wildcard;  images are requested without the Google Drive
+     * credentials.  Images from anywhere else are left where they are.
+     */
+    @Parameter
+    public String[] imageSources = {"https://*.googleusercontent.com/"};
+
+    public boolean isEnabled() {
+        return !KEEP_STYLES.equals(styles) || localizeImages;
+    }
+
+    /**
+     * @return what HTML exports processed with these settings depend on,
+     * besides their content (null when not processed at all):  outputs
+     * processed with different settings are not up to date
+     */
+    public String getVariant() {
+        return isEnabled() ? toString() : null;
+    }
+
+    @Override
+    public String toString() {
+        return "PostProcessingSettings{" +
+                "styles='" + styles + '\'' +
+                ", localizeImages=" + localizeImages +
+                ", imagesDirectory=" + imagesDirectory +
+                ", imageSources=" + Arrays.toString(imageSources) +
+                '}';
+    }
+}
@@ -0,0 +1,29 @@
+package net.matteolandi.plugins.livedocumentationfetcher;
+
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.util.Arrays;
+
+/**
+ * Drive search query (e.g. "title contains 'Spec'") whose matching documents
+ * are all fetched.
+ */
+public final class Query {
+    @Parameter(required = true)
+    public String q;
+
+    @Parameter
+    public java.io.File outputDirectory;
+
+    @Parameter
+    public Format[] formats;
+
+    @Override
+    public String toString() {
+        return "Query{" +
+                "q='" + q + '\'' +
+                ", outputDirectory='" + outputDirectory + '\'' +
+                ", formats=" + Arrays.toString(formats) +
+                '}';
+    }
+}
@@ -0,0 +1,236 @@
+package net.matteolandi.plugins.livedocumentationfetcher;
+
+import com.google.api.client.http.HttpResponseException;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import net.matteolandi.plugins.livedocumentationfetcher.googledrive.DownloadResponse;
+import net.matteolandi.plugins.livedocumentationfetcher.googledrive.GoogleDriveService;
+import org.apache.maven.plugin.logging.Log;
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Func1;
+import rx.util.async.Async;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A document, in a given format, downloaded over one or more attempts.
+ *
+ * The bytes received are kept in a part file next to the destination so
+ * that, when the server supports byte ranges, a failed attempt is resumed
+ * where it stopped instead of being started over.  Files whose size is known
+ * in advance (i.e. not Google documents, exported on the fly) and exceeding
+ * a threshold are split into several ranges, fetched in parallel and resumed
+ * independently of one another.
+ *
+ * Attempts are expected to be made one after the other, never concurrently.
+ */
+public class ResumableDownload {
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+    private final Log log;
+    private final GoogleDriveService googleDriveService;
+    private final DocumentWriter documentWriter;
+    private final Scheduler ioScheduler;
+    private final int parallelRanges;
+    private final long parallelRangeThreshold;
+    private final AtomicLong position = new AtomicLong();
+    private java.io.File part;
+    private boolean rangesSupported;
+    private volatile String validator;
+    private List<Range> ranges;
+
+    public ResumableDownload(final Log log, final GoogleDriveService googleDriveService,
+                             final DocumentWriter documentWriter, final Scheduler ioScheduler,
+                             final int parallelRanges, final long parallelRangeThreshold) {
+        this.log = log;
+        this.googleDriveService = googleDriveService;
+        this.documentWriter = documentWriter;
+        this.ioScheduler = ioScheduler;
+        this.parallelRanges = parallelRanges;
+        this.parallelRangeThreshold = parallelRangeThreshold;
+    }
+
+    /**
+     * Fetches whatever was not received by the previous attempts.
+     *
+     * @param size        size of the file, null if not known in advance
+     * @param destination where the part file is going to be committed to
+     * @return the complete part file
+     */
+    public java.io.File fetch(final String downloadUrl, final Long size, final java.io.File destination,
+                              final MeteredInputStream.Meter meter) throws IOException {
+        if (part == null || !part.isFile()) {
+            part = documentWriter.createPart(destination);
+            position.set(0);
+            ranges = (parallelRanges > 1 && size != null && size >= parallelRangeThreshold)
+                    ? split(size, parallelRanges) : null;
+        }
+
+        if (ranges != null) {
+            try {
+                fetchRanges(downloadUrl, meter);
+                return part;
+            } catch (RangesNotSupportedException e) {
+                log.debug(String.format("Byte ranges not honoured, downloading as a whole: '%s'", downloadUrl));
+                ranges = null;
+                rangesSupported = false;
+            }
+        }
+        fetchWhole(downloadUrl, meter);
+        return part;
+    }
+
+    /**
+     * Deletes the part file, if not committed already.
+     */
+    public void discard() {
+        if (part != null && part.isFile() && !part.delete()) {
+            log.warn(String.format("Cannot delete partial download: '%s'", part.getAbsolutePath()));
+        }
+    }
+
+    private void fetchWhole(final String downloadUrl, final MeteredInputStream.Meter meter) throws IOException {
+        final long from = rangesSupported ? position.get() : 0;
+        if (from > 0) {
+            log.debug(String.format("Resuming download from byte %d: '%s'", from, downloadUrl));
+        }
+
+        DownloadResponse response;
+        try {
+            response = request(downloadUrl, from, null, meter);
+        } catch (HttpResponseException e) {
+            // The previous attempt might have failed right after the last byte
+            if (from == 0 || e.getStatusCode() != HTTP_RANGE_NOT_SATISFIABLE) {
+                throw e;
+            }
+            response = request(downloadUrl, 0, null, meter);
+        }
+        if (response.offset > from) {
+            response.abort();
+            throw new IOException(String.format("Asked for byte %d, received byte %d onwards: '%s'",
+                    from, response.offset, downloadUrl));
+        }
+
+        rangesSupported = response.rangesSupported;
+        validator = response.validator;
+        position.set(response.offset);
+        documentWriter.truncate(part, response.offset);
+        documentWriter.writeAt(new MeteredInputStream(response.content, meter), part, position);
+        if (response.size != null && position.get() != response.size) {
+            throw new EOFException(String.format("Received %d of %d bytes: '%s'",
+                    position.get(), response.size, downloadUrl));
+        }
+    }
+
+    private void fetchRanges(final String downloadUrl, final MeteredInputStream.Meter meter) throws IOException {
+        final List<Throwable> failures = new CopyOnWriteArrayList<Throwable>();
+        final Collection<Observable<MeteredInputStream.Meter>> accumulator = Lists.newArrayList();
+        for (final Range range : ranges) {
+            if (range.isComplete()) {
+                continue;
+            }
+            accumulator.add(Async.fromCallable(new Callable<MeteredInputStream.Meter>() {
+                @Override
+                public MeteredInputStream.Meter call() throws Exception {
+                    return fetchRange(downloadUrl, range);
+                }
+            }, ioScheduler).onErrorResumeNext(new Func1<Throwable, Observable<MeteredInputStream.Meter>>() {
+                @Override
+                public Observable<MeteredInputStream.Meter> call(final Throwable throwable) {
+                    // Wait for the other ranges anyway:  the next attempt must
+                    // not find any of them still writing
+                    failures.add(throwable);
+                    return Observable.empty();
+                }
+            }));
+        }
+
+        // Ranges overlap in time, so only the elapsed time is accounted
+        final long start = System.nanoTime();
+        for (final MeteredInputStream.Meter rangeMeter : Observable.merge(accumulator).toList().toBlocking().single()) {
+            meter.bytes += rangeMeter.bytes;
+        }
+        meter.nanos += System.nanoTime() - start;
+
+        if (!failures.isEmpty()) {
+            for (final Throwable failure : failures) {
+                if (failure instanceof RangesNotSupportedException) {
+                    throw (RangesNotSupportedException) failure;
+                }
+            }
+            Throwables.propagateIfInstanceOf(failures.get(0), IOException.class);
+            throw Throwables.propagate(failures.get(0));
+        }
+    }
+
+    private MeteredInputStream.Meter fetchRange(final String downloadUrl, final Range range) throws IOException {
+        final MeteredInputStream.Meter meter = new MeteredInputStream.Meter();
+        final DownloadResponse response = request(downloadUrl, range.next.get(), range.last, meter);
+        if (response.offset != range.next.get()) {
+            response.abort();
+            throw new RangesNotSupportedException();
+        }
+        if (validator == null) {
+            validator = response.validator;
+        }
+
+        documentWriter.writeAt(new MeteredInputStream(response.content, meter), part, range.next);
+        if (!range.isComplete()) {
+            throw new EOFException(String.format("Received bytes %d to %d of range %s: '%s'",
+                    range.first, range.next.get() - 1, range, downloadUrl));
+        }
+        return meter;
+    }
+
+    private DownloadResponse request(final String downloadUrl, final long from, final Long to,
+                                     final MeteredInputStream.Meter meter) throws IOException {
+        log.debug(String.format("Downloading: '%s'", downloadUrl));
+        final long start = System.nanoTime();
+        try {
+            return googleDriveService.fetchRangeByDownloadUrl(downloadUrl, from, to, validator);
+        } finally {
+            meter.nanos += System.nanoTime() - start;
+        }
+    }
+
+    private static List<Range> split(final long size, final int count) {
+        final long rangeSize = (size + count - 1) / count;
+        final List<Range> ranges = Lists.newArrayListWithCapacity(count);
+        for (long first = 0; first < size; first += rangeSize) {
+            ranges.add(new Range(first, Math.min(size, first + rangeSize) - 1));
+        }
+        return ranges;
+    }
+
+    private static final class Range {
+        final long first;
+        final long last;
+        final AtomicLong next;
+
+        Range(final long first, final long last) {
+            this.first = first;
+            this.last = last;
+            this.next = new AtomicLong(first);
+        }
+
+        boolean isComplete() {
+            return next.get() > last;
+        }
+
+        @Override
+        public String toString() {
+            return first + "-" + last;
+        }
+    }
+
+    private static final class RangesNotSupportedException extends IOException {
+        private static final long serialVersionUID = 1L;
+    }
+}
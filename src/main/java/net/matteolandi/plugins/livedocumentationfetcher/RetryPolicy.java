@@ -0,0 +1,160 @@
+package net.matteolandi.plugins.livedocumentationfetcher;
+
+import com.google.api.client.http.HttpResponseException;
+import com.google.common.collect.ImmutableSet;
+import net.matteolandi.plugins.livedocumentationfetcher.googledrive.DriveRateLimiter;
+import org.apache.maven.plugin.logging.Log;
+import rx.Notification;
+import rx.Observable;
+import rx.functions.Func1;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides whether, and after how long, a failed operation should be retried.
+ *
+ * Delays grow exponentially with decorrelated jitter, i.e. each delay is
+ * picked at random in between the base delay and three times the previous
+ * one, unless the server asks for a longer one with a Retry-After header.
+ * All the operations share the same deadline, so that a flaky connection
+ * cannot keep the build busy indefinitely.
+ */
+public class RetryPolicy {
+    public enum Cause {
+        NETWORK_ERROR,
+        RATE_LIMITED,
+        SERVER_ERROR
+    }
+
+    private static final Set<Integer> RETRYABLE_STATUS_CODES = ImmutableSet.of(408, 429, 500, 502, 503, 504);
+    private static final String HTTP_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz";
+
+    private final Random random = new Random();
+    private final Log log;
+    private final RetrySettings settings;
+    private final FetchMetrics metrics;
+    private final long deadline;
+
+    public RetryPolicy(final Log log, final RetrySettings settings, final FetchMetrics metrics) {
+        this.log = log;
+        this.settings = settings;
+        this.metrics = metrics;
+        this.deadline = System.currentTimeMillis() + settings.deadlineMillis;
+    }
+
+    /**
+     * Creates the handler to pass to {@link Observable#retryWhen(Func1)};  a
+     * new handler is needed for each operation, as it keeps track of the
+     * attempts made so far.
+     */
+    public Func1<Observable<? extends Notification<?>>, Observable<?>> retryWhen(final String operation) {
+        return new RetryWhenRetryable(operation);
+    }
+
+    /**
+     * @return the cause of the failure, or null if the failure is not worth
+     * retrying
+     */
+    public static Cause classify(final Throwable throwable) {
+        if (throwable instanceof HttpResponseException) {
+            final HttpResponseException e = (HttpResponseException) throwable;
+            if (DriveRateLimiter.isRateLimitExceeded(e)) {
+                return Cause.RATE_LIMITED;
+            }
+            if (RETRYABLE_STATUS_CODES.contains(e.getStatusCode())) {
+                return Cause.SERVER_ERROR;
+            }
+            return null;
+        }
+        if (throwable instanceof IOException) {
+            return Cause.NETWORK_ERROR;
+        }
+        return null;
+    }
+
+    private long getDelayMillis(final long previousDelayMillis, final Throwable throwable) {
+        final long upperBound = Math.max(settings.baseDelayMillis, previousDelayMillis * 3);
+        final long delay = Math.min(settings.maxDelayMillis,
+                settings.baseDelayMillis + (long) (random.nextDouble() * (upperBound - settings.baseDelayMillis)));
+
+        return Math.max(delay, getRetryAfterMillis(throwable));
+    }
+
+    private static long getRetryAfterMillis(final Throwable throwable) {
+        if (!(throwable instanceof HttpResponseException)) {
+            return 0;
+        }
+        final String retryAfter = ((HttpResponseException) throwable).getHeaders().getRetryAfter();
+        if (retryAfter == null) {
+            return 0;
+        }
+
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim()));
+        } catch (NumberFormatException e) {
+            try {
+                final SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
+                return Math.max(0, format.parse(retryAfter.trim()).getTime() - System.currentTimeMillis());
+            } catch (ParseException e1) {
+                return 0;
+            }
+        }
+    }
+
+    private class RetryWhenRetryable implements Func1<Observable<? extends Notification<?>>, Observable<?>> {
+        private final String operation;
+        private int attempts;
+        private long previousDelayMillis;
+
+        RetryWhenRetryable(final String operation) {
+            this.operation = operation;
+            this.attempts = 1;
+            this.previousDelayMillis = settings.baseDelayMillis;
+        }
+
+        @Override
+        public Observable<?> call(Observable<? extends Notification<?>> notifications) {
+            return notifications
+                    .flatMap(new Func1<Notification<?>, Observable<?>>() {
+                        @Override
+                        public Observable<?> call(Notification<?> notification) {
+                            final Throwable throwable = notification.getThrowable();
+                            final Cause cause = classify(throwable);
+                            if (cause == null) {
+                                log.debug(String.format("Not retrying %s: %s", operation, throwable));
+                                return Observable.error(throwable);
+                            }
+                            if (attempts >= settings.maxAttempts) {
+                                log.warn(String.format("Giving up %s after %d attempts: %s",
+                                        operation, attempts, throwable.getMessage()));
+                                return Observable.error(throwable);
+                            }
+
+                            final long delayMillis = getDelayMillis(previousDelayMillis, throwable);
+                            if (System.currentTimeMillis() + delayMillis > deadline) {
+                                log.warn(String.format("Giving up %s, out of time: %s",
+                                        operation, throwable.getMessage()));
+                                return Observable.error(throwable);
+                            }
+
+                            attempts++;
+                            previousDelayMillis = delayMillis;
+                            metrics.recordRetry(cause);
+                            log.info(String.format("Retrying %s in %d ms (attempt %d of %d), %s: %s",
+                                    operation, delayMillis, attempts, settings.maxAttempts, cause,
+                                    throwable.getMessage()));
+
+                            // When this Observable calls onNext, the original
+                            // Observable will be retried (i.e. re-subscribed).
+                            return Observable.timer(delayMillis, TimeUnit.MILLISECONDS);
+                        }
+                    });
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package net.matteolandi.plugins.livedocumentationfetcher;
+
+import org.apache.maven.plugins.annotations.Parameter;
+
+public final class RetrySettings {
+    /**
+     * Maximum number of attempts for each operation (e.g. the download of a
+     * document), the first one included.
+     */
+    @Parameter
+    public int maxAttempts = 5;
+
+    /**
+     * Lower bound for the delay in between two attempts.
+     */
+    @Parameter
+    public long baseDelayMillis = 500;
+
+    /**
+     * Upper bound for the delay in between two attempts (unless the server
+     * explicitly asks to wait longer, with a Retry-After header).
+     */
+    @Parameter
+    public long maxDelayMillis = 30000;
+
+    /**
+     * Overall time budget of the execution:  once exhausted, failed operations
+     * are not retried anymore.
+     */
+    @Parameter
+    public long deadlineMillis = 600000;
+
+    @Override
+    public String toString() {
+        return "RetrySettings{" +
+                "maxAttempts=" + maxAttempts +
+                ", baseDelayMillis=" + baseDelayMillis +
+                ", maxDelayMillis=" + maxDelayMillis +
+                ", deadlineMillis=" + deadlineMillis +
+                '}';
+    }
+}
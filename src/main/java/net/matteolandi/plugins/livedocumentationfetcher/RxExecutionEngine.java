@@ -0,0 +1,53 @@
+package net.matteolandi.plugins.livedocumentationfetcher;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Action1;
+import rx.schedulers.Schedulers;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Downloads run on a pool of maxConcurrentDownloads platform threads, and
+ * everything else on the RxJava I/O pool.
+ *
+ * The fetch stops at the first failure;  downloads still running are
+ * interrupted when the engine is closed.
+ */
+public class RxExecutionEngine extends ExecutionEngine {
+    private final ExecutorService downloadExecutor;
+    private final Scheduler downloadScheduler;
+
+    public RxExecutionEngine(final int maxConcurrentDownloads) {
+        this.downloadExecutor = Executors.newFixedThreadPool(Math.max(1, maxConcurrentDownloads),
+                new ThreadFactoryBuilder().setNameFormat("document-download-%d").setDaemon(true).build());
+        this.downloadScheduler = Schedulers.from(downloadExecutor);
+    }
+
+    @Override
+    public String getName() {
+        return RX;
+    }
+
+    @Override
+    public Scheduler getDownloadScheduler() {
+        return downloadScheduler;
+    }
+
+    @Override
+    public Scheduler getIoScheduler() {
+        return Schedulers.io();
+    }
+
+    @Override
+    public void run(final Observable<FetchResult> fetchResultsObservable, final Action1<FetchResult> action) {
+        fetchResultsObservable.toBlocking().forEach(action);
+    }
+
+    @Override
+    public void close() {
+        downloadExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,181 @@
+package net.matteolandi.plugins.livedocumentationfetcher;
+
+import com.google.common.collect.Sets;
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Action1;
+import rx.schedulers.Schedulers;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Every look-up, listing and download runs on a thread of its own (a virtual
+ * one, on Java 21 and later), so that blocking calls do not hold on to
+ * platform threads;  at most maxConcurrentDownloads downloads run at a time:
+ * the others are queued, and only given a thread once a permit frees up, in
+ * the order they were submitted (e.g. largest first).
+ *
+ * The threads are scoped to {@link #run(Observable, Action1)}, which does
+ * not return before all of them have terminated:  work no longer needed
+ * once the results are complete (e.g. past a revalidation budget) is
+ * interrupted, and so is, with failFast, all the work still running after
+ * the first failure;  without failFast, that work is allowed to complete
+ * before the failure is reported, so that no download is left halfway.
+ */
+public class VirtualThreadExecutionEngine extends ExecutionEngine {
+    private final ThreadFactory threadFactory;
+    private final Semaphore downloadPermits;
+    private final Queue<Runnable> pendingDownloads = new ConcurrentLinkedQueue<Runnable>();
+    private final boolean failFast;
+    private final Set<Thread> threads = Sets.newConcurrentHashSet();
+    private final Scheduler downloadScheduler;
+    private final Scheduler ioScheduler;
+
+    public VirtualThreadExecutionEngine(final ThreadFactory threadFactory, final int maxConcurrentDownloads,
+                                        final boolean failFast) {
+        this.threadFactory = threadFactory;
+        this.downloadPermits = new Semaphore(Math.max(1, maxConcurrentDownloads));
+        this.failFast = failFast;
+        this.downloadScheduler = Schedulers.from(new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                pendingDownloads.add(command);
+                startDownloads();
+            }
+        });
+        this.ioScheduler = Schedulers.from(new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                fork(command);
+            }
+        });
+    }
+
+    /**
+     * @return a factory of virtual threads, or null if the running JVM does
+     * not support them
+     */
+    public static ThreadFactory newVirtualThreadFactory() {
+        try {
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            final Object builder = builderClass.getMethod("name", String.class, long.class)
+                    .invoke(Thread.class.getMethod("ofVirtual").invoke(null), "document-fetch-", 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (IllegalAccessException e) {
+            return null;
+        } catch (InvocationTargetException e) {
+            // A preview feature, not enabled
+            return null;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return VIRTUAL_THREADS;
+    }
+
+    @Override
+    public Scheduler getDownloadScheduler() {
+        return downloadScheduler;
+    }
+
+    @Override
+    public Scheduler getIoScheduler() {
+        return ioScheduler;
+    }
+
+    @Override
+    public void run(final Observable<FetchResult> fetchResultsObservable, final Action1<FetchResult> action) {
+        boolean failed = true;
+        try {
+            fetchResultsObservable.toBlocking().forEach(action);
+            failed = false;
+        } finally {
+            if (!failed || failFast) {
+                cancel();
+            }
+            join();
+        }
+    }
+
+    @Override
+    public void close() {
+        cancel();
+    }
+
+    /**
+     * Forks as many of the pending downloads as there are free permits, each
+     * starting the next ones once done.
+     *
+     * Permits are taken before polling, and given back (then checking the
+     * queue again) if there was nothing to run:  whoever adds a download, or
+     * frees a permit, always gets to see the other.
+     */
+    private void startDownloads() {
+        while (!pendingDownloads.isEmpty() && downloadPermits.tryAcquire()) {
+            final Runnable command = pendingDownloads.poll();
+            if (command == null) {
+                downloadPermits.release();
+                continue;
+            }
+            fork(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        command.run();
+                    } finally {
+                        downloadPermits.release();
+                        startDownloads();
+                    }
+                }
+            });
+        }
+    }
+
+    private void fork(final Runnable command) {
+        final Thread thread = threadFactory.newThread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    command.run();
+                } finally {
+                    threads.remove(Thread.currentThread());
+                }
+            }
+        });
+        // Tracked before being started, so that a join never misses it
+        threads.add(thread);
+        thread.start();
+    }
+
+    private void cancel() {
+        // Downloads still waiting for their turn are dropped altogether
+        pendingDownloads.clear();
+        for (final Thread thread : threads) {
+            thread.interrupt();
+        }
+    }
+
+    private void join() {
+        try {
+            while (!threads.isEmpty()) {
+                for (final Thread thread : threads) {
+                    thread.join();
+                }
+            }
+        } catch (InterruptedException e) {
+            cancel();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package net.matteolandi.plugins.livedocumentationfetcher;
+
+import com.google.common.collect.EnumMultiset;
+import com.google.common.collect.Multiset;
+import net.matteolandi.plugins.livedocumentationfetcher.googledrive.GoogleDriveService;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Action1;
+import rx.functions.Func1;
+import rx.util.async.Async;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps the configured documents in sync with Google Drive until interrupted,
+ * e.g. while editing them and previewing their local copies.
+ *
+ * Documents are first fetched as by the fetch goal;  Drive is then polled
+ * for changes, each poll costing a single request (the largest change id):
+ * only when that moved are documents looked-up again, through the changes
+ * feed, and rewritten if they were modified.  The Drive session is set up
+ * once, and reused by all the polls.
+ *
+ * Polls start minPollIntervalMillis apart;  the interval doubles after each
+ * poll finding nothing new, up to maxPollIntervalMillis, and goes back to the
+ * minimum as soon as a document changes.
+ */
+@Mojo(name = "watch")
+public class WatchMojo extends AbstractFetchMojo {
+    @Parameter(property = "liveDocumentationFetcher.minPollIntervalMillis", defaultValue = "2000")
+    public long minPollIntervalMillis;
+
+    @Parameter(property = "liveDocumentationFetcher.maxPollIntervalMillis", defaultValue = "60000")
+    public long maxPollIntervalMillis;
+
+    /**
+     * Number of polls after which the goal stops;  0 keeps it running until
+     * interrupted.
+     */
+    @Parameter(property = "liveDocumentationFetcher.maxPolls", defaultValue = "0")
+    public int maxPolls;
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        final Log log = getLog();
+        if (skip) {
+            log.info("Skipping watch of documents");
+            return;
+        }
+        if (hasNothingToFetch()) {
+            log.info("No documents, folders or queries to watch");
+            return;
+        }
+
+        checkSettings();
+        final ExecutionEngine executionEngine = newExecutionEngine(log);
+        final Manifest manifest = Manifest.load(log, outputDirectory);
+        final DocumentWriter documentWriter = new DocumentWriter(writeBufferSize, fsync, hardLinkCacheEntries);
+        final ContentCache contentCache = useSharedCache ? new ContentCache(log, cacheDirectory) : null;
+        final AtomicReference<DriveSession> sessionReference = new AtomicReference<DriveSession>();
+
+        log.info("Watching documents for changes, press Ctrl+C to stop");
+        long intervalMillis = minPollIntervalMillis;
+        // Until a poll goes through, all the documents are checked
+        boolean synced = false;
+        try {
+            for (int polls = 0; maxPolls <= 0 || polls < maxPolls; polls++) {
+                if (polls > 0) {
+                    Thread.sleep(intervalMillis);
+                }
+
+                // Retries are bound to the deadline of each poll
+                final FetchMetrics metrics = new FetchMetrics();
+                final RetryPolicy retryPolicy = new RetryPolicy(log, retry, metrics);
+                try {
+                    final Observable<GoogleDriveService> driveServiceObservable =
+                            getLazyGoogleDriveServiceObservable(log, retryPolicy, metrics, sessionReference);
+                    final int refreshed = poll(log, driveServiceObservable, manifest, executionEngine,
+                            retryPolicy, metrics, documentWriter, contentCache, !synced);
+                    if (!synced) {
+                        reportMetrics(log, metrics);
+                        synced = true;
+                    }
+                    intervalMillis = (refreshed > 0)
+                            ? minPollIntervalMillis : Math.min(maxPollIntervalMillis, intervalMillis * 2);
+                } catch (RuntimeException e) {
+                    log.warn(String.format("Cannot poll Google Drive, trying again in %d ms: %s",
+                            maxPollIntervalMillis, e.getMessage()));
+                    intervalMillis = maxPollIntervalMillis;
+                } finally {
+                    saveManifest(log, manifest);
+                    if (sessionReference.get() != null) {
+                        sessionReference.get().credentialStore.flush();
+                    }
+                }
+                log.debug(String.format("Next poll in %d ms", intervalMillis));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.info("Watch of documents interrupted");
+        } finally {
+            executionEngine.close();
+            documentWriter.close();
+        }
+    }
+
+    @Override
+    protected void checkSettings() throws MojoExecutionException {
+        super.checkSettings();
+        if (minPollIntervalMillis <= 0 || minPollIntervalMillis > maxPollIntervalMillis) {
+            throw new MojoExecutionException(String.format(
+                    "Invalid poll intervals: %d..%d ms, expected 0 < minPollIntervalMillis <= maxPollIntervalMillis",
+                    minPollIntervalMillis, maxPollIntervalMillis));
+        }
+    }
+
+    /**
+     * The changes feed is what makes polling cheap.
+     */
+    @Override
+    protected boolean isUsingChangesFeed() {
+        return true;
+    }
+
+    /**
+     * @param first true, if all the documents have to be checked regardless
+     *              of the largest change id recorded by previous executions
+     *              (the configuration might have changed since)
+     * @return the number of documents rewritten
+     */
+    private int poll(final Log log, final Observable<GoogleDriveService> googleDriveServiceObservable,
+                     final Manifest manifest, final ExecutionEngine executionEngine, final RetryPolicy retryPolicy,
+                     final FetchMetrics metrics, final DocumentWriter documentWriter,
+                     final ContentCache contentCache, final boolean first) {
+        final Long knownChangeId = first ? null : manifest.getLargestChangeId();
+        final Multiset<FetchResult.Status> statuses = EnumMultiset.create(FetchResult.Status.class);
+
+        final Observable<FetchResult> pollResultsObservable =
+                googleDriveServiceObservable.flatMap(new Func1<GoogleDriveService, Observable<FetchResult>>() {
+                    @Override
+                    public Observable<FetchResult> call(final GoogleDriveService googleDriveService) {
+                        final Observable<FetchResult> fetchResultsObservable = getFetchResultsObservable(log,
+                                Observable.just(googleDriveService), manifest, executionEngine, retryPolicy, metrics,
+                                documentWriter, contentCache, documents, true);
+                        if (knownChangeId == null) {
+                            return fetchResultsObservable;
+                        }
+
+                        return retrieveLargestChangeId(googleDriveService, executionEngine.getIoScheduler(), metrics)
+                                .retryWhen(retryPolicy.retryWhen("look-up of the largest change id"))
+                                .flatMap(new Func1<Long, Observable<FetchResult>>() {
+                                    @Override
+                                    public Observable<FetchResult> call(final Long largestChangeId) {
+                                        if (largestChangeId <= knownChangeId) {
+                                            return Observable.empty();
+                                        }
+                                        log.debug(String.format("Drive changed since: %d", knownChangeId));
+                                        return fetchResultsObservable;
+                                    }
+                                });
+                    }
+                });
+
+        executionEngine.run(pollResultsObservable, new Action1<FetchResult>() {
+            @Override
+            public void call(FetchResult result) {
+                statuses.add(result.status);
+                if (result.status == FetchResult.Status.CREATED) {
+                    log.info(String.format("%s: '%s'", result.status.label, result.path));
+                } else {
+                    log.debug(String.format("%s: '%s'", result.status.label, result.path));
+                }
+            }
+        });
+
+        if (!statuses.isEmpty()) {
+            log.info(String.format("Checked %d documents: %d refreshed, %d unchanged, %d skipped (not modified)",
+                    statuses.size(), statuses.count(FetchResult.Status.CREATED),
+                    statuses.count(FetchResult.Status.UNCHANGED), statuses.count(FetchResult.Status.SKIPPED)));
+        }
+        return statuses.count(FetchResult.Status.CREATED);
+    }
+
+    private static Observable<Long> retrieveLargestChangeId(final GoogleDriveService googleDriveService,
+                                                            final Scheduler ioScheduler,
+                                                            final FetchMetrics metrics) {
+        return Async.fromCallable(new Callable<Long>() {
+            @Override
+            public Long call() throws Exception {
+                final long start = System.nanoTime();
+                try {
+                    return googleDriveService.retrieveLargestChangeId();
+                } finally {
+                    metrics.time(FetchMetrics.Phase.LOOKUP, start);
+                }
+            }
+        }, ioScheduler);
+    }
+}
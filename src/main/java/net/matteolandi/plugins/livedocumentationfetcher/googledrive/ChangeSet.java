@@ -0,0 +1,27 @@
+package net.matteolandi.plugins.livedocumentationfetcher.googledrive;
+
+import java.util.Set;
+
+/**
+ * Ids and titles of the files changed since a given Drive change id.
+ */
+public final class ChangeSet {
+    public final Set<String> fileIds;
+    public final Set<String> titles;
+    public final long largestChangeId;
+
+    public ChangeSet(final Set<String> fileIds, final Set<String> titles, final long largestChangeId) {
+        this.fileIds = fileIds;
+        this.titles = titles;
+        this.largestChangeId = largestChangeId;
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeSet{" +
+                "fileIds=" + fileIds +
+                ", titles=" + titles +
+                ", largestChangeId=" + largestChangeId +
+                '}';
+    }
+}
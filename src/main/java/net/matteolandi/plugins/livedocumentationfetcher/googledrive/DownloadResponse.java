@@ -0,0 +1,57 @@
+package net.matteolandi.plugins.livedocumentationfetcher.googledrive;
+
+import com.google.api.client.http.HttpResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Content of a (possibly partial) download, together with what is needed to
+ * resume it.
+ */
+public final class DownloadResponse {
+    public final InputStream content;
+    /**
+     * Position of the first byte of content within the whole file:  0 if the
+     * requested range was not honoured, and the whole file was sent instead.
+     */
+    public final long offset;
+    /**
+     * Size of the whole file, null if unknown.
+     */
+    public final Long size;
+    public final boolean rangesSupported;
+    /**
+     * ETag (or Last-Modified date) identifying this version of the file, null
+     * if unknown.
+     */
+    public final String validator;
+    private final HttpResponse response;
+
+    DownloadResponse(final InputStream content, final long offset, final Long size, final boolean rangesSupported,
+                     final String validator, final HttpResponse response) {
+        this.content = content;
+        this.offset = offset;
+        this.size = size;
+        this.rangesSupported = rangesSupported;
+        this.validator = validator;
+        this.response = response;
+    }
+
+    /**
+     * Closes the connection without reading the rest of the content.
+     */
+    public void abort() throws IOException {
+        response.disconnect();
+    }
+
+    @Override
+    public String toString() {
+        return "DownloadResponse{" +
+                "offset=" + offset +
+                ", size=" + size +
+                ", rangesSupported=" + rangesSupported +
+                ", validator='" + validator + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,82 @@
+package net.matteolandi.plugins.livedocumentationfetcher.googledrive;
+
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpResponseException;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.RateLimiter;
+import org.apache.maven.plugin.logging.Log;
+
+import java.util.Set;
+
+/**
+ * Token bucket shared by all the requests sent to Google Drive.
+ *
+ * The rate is halved every time Drive complains about too many requests, and
+ * slowly brought back to the configured value as requests succeed again
+ * (AIMD).
+ */
+public class DriveRateLimiter {
+    private static final int STATUS_TOO_MANY_REQUESTS = 429;
+    private static final int STATUS_FORBIDDEN = 403;
+    private static final Set<String> RATE_LIMIT_REASONS =
+            ImmutableSet.of("rateLimitExceeded", "userRateLimitExceeded");
+    private static final double MIN_PERMITS_PER_SECOND = 0.5;
+    private static final double RECOVERY_FACTOR = 0.05;
+
+    private final Log log;
+    private final double maxPermitsPerSecond;
+    private final RateLimiter rateLimiter;
+
+    public DriveRateLimiter(final Log log, final double maxPermitsPerSecond) {
+        this.log = log;
+        this.maxPermitsPerSecond = maxPermitsPerSecond;
+        this.rateLimiter = RateLimiter.create(maxPermitsPerSecond);
+    }
+
+    /**
+     * Blocks until a request can be sent.
+     *
+     * @return the time spent waiting, in seconds
+     */
+    public double acquire() {
+        return rateLimiter.acquire();
+    }
+
+    public void onSuccess() {
+        final double rate = rateLimiter.getRate();
+        if (rate < maxPermitsPerSecond) {
+            rateLimiter.setRate(Math.min(maxPermitsPerSecond, rate + maxPermitsPerSecond * RECOVERY_FACTOR));
+        }
+    }
+
+    public void onFailure(final HttpResponseException e) {
+        if (!isRateLimitExceeded(e)) {
+            return;
+        }
+
+        final double rate = Math.max(MIN_PERMITS_PER_SECOND, rateLimiter.getRate() / 2);
+        rateLimiter.setRate(rate);
+        log.info(String.format("Rate limit exceeded, slowing down to %.2f requests/s", rate));
+    }
+
+    public static boolean isRateLimitExceeded(final HttpResponseException e) {
+        if (e.getStatusCode() == STATUS_TOO_MANY_REQUESTS) {
+            return true;
+        }
+        if (e.getStatusCode() != STATUS_FORBIDDEN || !(e instanceof GoogleJsonResponseException)) {
+            return false;
+        }
+
+        final GoogleJsonError details = ((GoogleJsonResponseException) e).getDetails();
+        if (details == null || details.getErrors() == null) {
+            return false;
+        }
+        for (final GoogleJsonError.ErrorInfo error : details.getErrors()) {
+            if (RATE_LIMIT_REASONS.contains(error.getReason())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
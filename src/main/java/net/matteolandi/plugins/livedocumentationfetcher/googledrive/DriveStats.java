@@ -0,0 +1,65 @@
+package net.matteolandi.plugins.livedocumentationfetcher.googledrive;
+
+import com.google.common.collect.ConcurrentHashMultiset;
+import com.google.common.collect.ImmutableMultiset;
+import com.google.common.collect.Multiset;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the requests sent to Google Drive through the same
+ * {@link GoogleDriveUtils} instance:  time spent waiting on the rate limiter
+ * and HTTP status codes received.
+ *
+ * Counters are cumulative;  the activity of a single execution is obtained
+ * by subtracting the snapshot taken when it started from the one taken when
+ * it completed.
+ */
+public class DriveStats {
+    private final AtomicLong rateLimiterWaitNanos = new AtomicLong();
+    private final ConcurrentHashMultiset<Integer> statusCodes = ConcurrentHashMultiset.create();
+
+    void recordWait(final double seconds) {
+        rateLimiterWaitNanos.addAndGet((long) (seconds * TimeUnit.SECONDS.toNanos(1)));
+    }
+
+    void recordStatus(final int statusCode) {
+        statusCodes.add(statusCode);
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(rateLimiterWaitNanos.get(), ImmutableMultiset.copyOf(statusCodes));
+    }
+
+    public static final class Snapshot {
+        public static final Snapshot EMPTY = new Snapshot(0, ImmutableMultiset.<Integer>of());
+
+        public final long rateLimiterWaitNanos;
+        public final Multiset<Integer> statusCodes;
+
+        Snapshot(final long rateLimiterWaitNanos, final Multiset<Integer> statusCodes) {
+            this.rateLimiterWaitNanos = rateLimiterWaitNanos;
+            this.statusCodes = statusCodes;
+        }
+
+        public Snapshot minus(final Snapshot earlier) {
+            final ImmutableMultiset.Builder<Integer> builder = ImmutableMultiset.builder();
+            for (final Multiset.Entry<Integer> entry : statusCodes.entrySet()) {
+                final int count = entry.getCount() - earlier.statusCodes.count(entry.getElement());
+                if (count > 0) {
+                    builder.addCopies(entry.getElement(), count);
+                }
+            }
+            return new Snapshot(rateLimiterWaitNanos - earlier.rateLimiterWaitNanos, builder.build());
+        }
+
+        @Override
+        public String toString() {
+            return "Snapshot{" +
+                    "rateLimiterWaitNanos=" + rateLimiterWaitNanos +
+                    ", statusCodes=" + statusCodes +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package net.matteolandi.plugins.livedocumentationfetcher.googledrive;
+
+import com.google.api.client.googleapis.auth.oauth2.GoogleOAuthConstants;
+import com.google.api.services.drive.Drive;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Where Google Drive and its OAuth2 token server are reached;  only meant to
+ * be changed to point the plugin at a stand-in server (e.g. in integration
+ * tests).
+ */
+public final class EndpointSettings {
+    /**
+     * Root URL of the Drive API (and of its upload endpoints).
+     */
+    @Parameter
+    public String rootUrl = Drive.DEFAULT_ROOT_URL;
+
+    @Parameter
+    public String tokenServerUrl = GoogleOAuthConstants.TOKEN_SERVER_URL;
+
+    @Override
+    public String toString() {
+        return "EndpointSettings{" +
+                "rootUrl='" + rootUrl + '\'' +
+                ", tokenServerUrl='" + tokenServerUrl + '\'' +
+                '}';
+    }
+}
@@ -8,6 +8,8 @@ import com.google.api.client.json.JsonFactory;
 import com.google.api.services.drive.Drive;
 import com.google.api.services.drive.DriveScopes;
 import com.google.api.services.drive.model.File;
+import net.matteolandi.plugins.livedocumentationfetcher.http.ConfiguringHttpRequestInitializer;
+import net.matteolandi.plugins.livedocumentationfetcher.http.HttpSettings;
 import org.apache.maven.plugin.logging.Log;
 import org.codehaus.jackson.map.ObjectMapper;
 import rx.Observable;
@@ -27,7 +29,9 @@ public class GoogleDriveBasedCredentialStore implements CredentialStore {
     private final Drive service;
 
     private GoogleDriveBasedCredentialStore(final Log log, final HttpTransport httpTransport,
-                                            final JsonFactory jsonFactory, final GoogleDriveUtils googleDriveUtils,
+                                            final JsonFactory jsonFactory, final HttpSettings httpSettings,
+                                            final EndpointSettings endpointSettings,
+                                            final GoogleDriveUtils googleDriveUtils,
                                             final String serviceAccountEmail,
                                             final java.io.File serviceAccountPrivateKeyPath)
             throws GeneralSecurityException, IOException {
@@ -40,23 +44,26 @@ public class GoogleDriveBasedCredentialStore implements CredentialStore {
                 .setServiceAccountId(serviceAccountEmail)
                 .setServiceAccountScopes(Arrays.asList(DriveScopes.DRIVE))
                 .setServiceAccountPrivateKeyFromP12File(serviceAccountPrivateKeyPath)
+                .setTokenServerEncodedUrl(endpointSettings.tokenServerUrl)
                 .build();
         this.service = new Drive.Builder(httpTransport, jsonFactory, null)
+                .setRootUrl(endpointSettings.rootUrl)
                 .setApplicationName("DriveBasedCredentialStore")
-                .setHttpRequestInitializer(credential).build();
+                .setHttpRequestInitializer(new ConfiguringHttpRequestInitializer(credential, httpSettings)).build();
     }
 
 
     public static Observable<GoogleDriveBasedCredentialStore>
     observe(final Log log, final HttpTransport httpTransport, final JsonFactory jsonFactory,
+            final HttpSettings httpSettings, final EndpointSettings endpointSettings,
             final GoogleDriveUtils googleDriveUtils, final String serviceAccountEmail,
             final java.io.File serviceAccountPrivateKeyPath) {
         return Observable.create(new Observable.OnSubscribe<GoogleDriveBasedCredentialStore>() {
             @Override
             public void call(Subscriber<? super GoogleDriveBasedCredentialStore> s) {
                 try {
-                    s.onNext(new GoogleDriveBasedCredentialStore(log, httpTransport, jsonFactory, googleDriveUtils,
-                            serviceAccountEmail, serviceAccountPrivateKeyPath));
+                    s.onNext(new GoogleDriveBasedCredentialStore(log, httpTransport, jsonFactory, httpSettings,
+                            endpointSettings, googleDriveUtils, serviceAccountEmail, serviceAccountPrivateKeyPath));
                     s.onCompleted();
                 } catch (GeneralSecurityException e) {
                     log.warn(String.format("Cannot create Google Drive credential store: %s", e.getMessage()), e);
@@ -77,7 +84,7 @@ public class GoogleDriveBasedCredentialStore implements CredentialStore {
             return false;
         }
 
-        final InputStream inputStream = googleDriveUtils.fetchByTitle(service, userId);
+        final InputStream inputStream = googleDriveUtils.fetchFileByDownloadUrl(service, file.getDownloadUrl());
 
         final StoredCredential storedCredential
                 = objectMapper.readValue(inputStream, StoredCredential.class);
@@ -2,14 +2,19 @@ package net.matteolandi.plugins.livedocumentationfetcher.googledrive;
 
 import com.google.api.client.auth.oauth2.Credential;
 import com.google.api.client.auth.oauth2.CredentialStore;
+import com.google.api.client.auth.oauth2.CredentialStoreRefreshListener;
 import com.google.api.client.googleapis.auth.oauth2.GoogleAuthorizationCodeFlow;
 import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
 import com.google.api.client.googleapis.auth.oauth2.GoogleTokenResponse;
+import com.google.api.client.http.GenericUrl;
 import com.google.api.client.http.HttpTransport;
 import com.google.api.client.json.JsonFactory;
 import com.google.api.services.drive.Drive;
 import com.google.api.services.drive.DriveScopes;
 import com.google.api.services.drive.model.File;
+import com.google.api.services.drive.model.FileList;
+import net.matteolandi.plugins.livedocumentationfetcher.http.ConfiguringHttpRequestInitializer;
+import net.matteolandi.plugins.livedocumentationfetcher.http.HttpSettings;
 import org.apache.maven.plugin.logging.Log;
 import rx.Observable;
 import rx.Subscriber;
@@ -17,6 +22,8 @@ import rx.Subscriber;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
 
 public class GoogleDriveService {
 
@@ -28,16 +35,29 @@ public class GoogleDriveService {
     private final Drive service;
 
     private GoogleDriveService(final HttpTransport httpTransport, final JsonFactory jsonFactory,
+                               final HttpSettings httpSettings, final EndpointSettings endpointSettings,
                                final CredentialStore credentialStore, final GoogleDriveUtils googleDriveUtils,
                                final String clientId, final String clientSecret, final String authCode)
             throws IOException, MissingAuthorizationCodeException {
         this.credentialStore = credentialStore;
         this.googleDriveUtils = googleDriveUtils;
-        this.service = getService(httpTransport, jsonFactory, credentialStore, clientId, clientSecret, authCode);
+        this.service = getService(httpTransport, jsonFactory, httpSettings, endpointSettings, credentialStore,
+                clientId, clientSecret, authCode);
+    }
+
+    /**
+     * Wraps an already configured Drive client (e.g. one talking to a stub
+     * server), skipping authorization altogether.
+     */
+    public GoogleDriveService(final Drive service, final GoogleDriveUtils googleDriveUtils) {
+        this.credentialStore = null;
+        this.googleDriveUtils = googleDriveUtils;
+        this.service = service;
     }
 
     public static Observable<GoogleDriveService>
     observe(final Log log, final HttpTransport httpTransport, final JsonFactory jsonFactory,
+            final HttpSettings httpSettings, final EndpointSettings endpointSettings,
             final CredentialStore credentialStore, final GoogleDriveUtils googleDriveUtils,
             final String clientId, final String clientSecret, final String authCode) {
         return Observable.create(new Observable.OnSubscribe<GoogleDriveService>() {
@@ -45,8 +65,8 @@ public class GoogleDriveService {
             public void call(Subscriber<? super GoogleDriveService> s) {
                 try {
                     s.onNext(
-                            new GoogleDriveService(httpTransport, jsonFactory, credentialStore, googleDriveUtils,
-                                    clientId, clientSecret, authCode));
+                            new GoogleDriveService(httpTransport, jsonFactory, httpSettings, endpointSettings,
+                                    credentialStore, googleDriveUtils, clientId, clientSecret, authCode));
                     s.onCompleted();
                 } catch (IOException e) {
                     log.warn(String.format("Cannot create Google Drive credential store: %s", e.getMessage()), e);
@@ -60,11 +80,13 @@ public class GoogleDriveService {
     }
 
     private Drive getService(final HttpTransport httpTransport, final JsonFactory jsonFactory,
+                             final HttpSettings httpSettings, final EndpointSettings endpointSettings,
                              final CredentialStore credentialStore,
                              final String clientId, final String clientSecret, final String authCode)
             throws IOException, MissingAuthorizationCodeException {
         final GoogleAuthorizationCodeFlow flow = new GoogleAuthorizationCodeFlow.Builder(
                 httpTransport, jsonFactory, clientId, clientSecret, Arrays.asList(DriveScopes.DRIVE))
+                .setTokenServerUrl(new GenericUrl(endpointSettings.tokenServerUrl))
                 .setAccessType("offline")
                 .setApprovalPrompt("force")
                 .setCredentialStore(credentialStore).build();
@@ -80,6 +102,9 @@ public class GoogleDriveService {
                 .setTransport(httpTransport)
                 .setJsonFactory(jsonFactory)
                 .setClientSecrets(clientId, clientSecret)
+                .setTokenServerEncodedUrl(endpointSettings.tokenServerUrl)
+                // Otherwise refreshed tokens would be lost when the build ends
+                .addRefreshListener(new CredentialStoreRefreshListener(CLIENT_ID, credentialStore))
                 .build();
         if (!credentialStore.load(CLIENT_ID, credential)) {
             final GoogleTokenResponse response
@@ -87,7 +112,9 @@ public class GoogleDriveService {
             credential = flow.createAndStoreCredential(response, CLIENT_ID);
         }
 
-        return new Drive.Builder(httpTransport, jsonFactory, credential)
+        return new Drive.Builder(httpTransport, jsonFactory,
+                new ConfiguringHttpRequestInitializer(credential, httpSettings))
+                .setRootUrl(endpointSettings.rootUrl)
                 .setApplicationName("DriveService").build();
     }
 
@@ -95,10 +122,31 @@ public class GoogleDriveService {
         return googleDriveUtils.retrieveFileByTitle(service, title);
     }
 
+    public Map<String, File> retrieveFilesByTitles(final Collection<String> titles) throws IOException {
+        return googleDriveUtils.retrieveFilesByTitles(service, titles);
+    }
+
+    public FileList retrieveFilesPage(final String query, final String pageToken) throws IOException {
+        return googleDriveUtils.retrieveFilesPage(service, query, pageToken);
+    }
+
+    public long retrieveLargestChangeId() throws IOException {
+        return googleDriveUtils.retrieveLargestChangeId(service);
+    }
+
+    public ChangeSet retrieveChangesSince(final long changeId) throws IOException {
+        return googleDriveUtils.retrieveChangesSince(service, changeId);
+    }
+
     public InputStream fetchFileByDownloadUrl(final String downloadUrl) throws IOException {
         return googleDriveUtils.fetchFileByDownloadUrl(service, downloadUrl);
     }
 
+    public DownloadResponse fetchRangeByDownloadUrl(final String downloadUrl, final long from, final Long to,
+                                                    final String validator) throws IOException {
+        return googleDriveUtils.fetchRangeByDownloadUrl(service, downloadUrl, from, to, validator);
+    }
+
     public static final class MissingAuthorizationCodeException extends Exception {
         public final String url;
 
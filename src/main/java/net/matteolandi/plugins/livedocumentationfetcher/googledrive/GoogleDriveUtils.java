@@ -3,27 +3,143 @@ package net.matteolandi.plugins.livedocumentationfetcher.googledrive;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringBufferInputStream;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpRequest;
 import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpResponseException;
 import com.google.api.client.http.InputStreamContent;
 import com.google.api.services.drive.Drive;
 import com.google.api.services.drive.DriveRequest;
+import com.google.api.services.drive.model.Change;
+import com.google.api.services.drive.model.ChangeList;
 import com.google.api.services.drive.model.File;
+import com.google.api.services.drive.model.FileList;
+import com.google.common.base.Joiner;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import net.matteolandi.plugins.livedocumentationfetcher.http.ContentLengthCheckingInputStream;
 
 public class GoogleDriveUtils {
+    private static final int MAX_RESULTS_PER_PAGE = 1000;
+    private static final int HTTP_PARTIAL_CONTENT = 206;
+    private static final String ACCEPT_RANGES = "Accept-Ranges";
+    private static final String BYTES = "bytes";
+    private static final String IDENTITY = "identity";
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-\\d+/(\\d+|\\*)");
+
+    private final DriveRateLimiter rateLimiter;
+    private final DriveStats stats = new DriveStats();
+
+    public GoogleDriveUtils(final DriveRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    public DriveStats getStats() {
+        return stats;
+    }
+
     public File retrieveFileByTitle(final Drive service, final String title) throws IOException {
-        final List<File> items = service.files().list()
-                .setQ(String.format("title = '%s'", title))
-                .setMaxResults(1)
-                .execute().getItems();
+        final List<File> items = execute(service.files().list()
+                .setQ(getTitleClause(title))
+                .setMaxResults(1)).getItems();
         if (items.size() == 0) {
             return null;
         }
         return items.get(0);
     }
 
+    /**
+     * Looks-up all the given titles with a single (paginated) query; titles
+     * not matching any document are simply missing from the returned map.
+     */
+    public Map<String, File> retrieveFilesByTitles(final Drive service, final Collection<String> titles)
+            throws IOException {
+        final Map<String, File> files = Maps.newHashMapWithExpectedSize(titles.size());
+        if (titles.isEmpty()) {
+            return files;
+        }
+
+        final List<String> clauses = Lists.newArrayListWithExpectedSize(titles.size());
+        for (final String title : titles) {
+            clauses.add(getTitleClause(title));
+        }
+
+        final Drive.Files.List request = service.files().list()
+                .setQ(Joiner.on(" or ").join(clauses))
+                .setMaxResults(MAX_RESULTS_PER_PAGE);
+        do {
+            final FileList fileList = execute(request);
+            if (fileList.getItems() != null) {
+                for (final File file : fileList.getItems()) {
+                    if (!files.containsKey(file.getTitle())) {
+                        files.put(file.getTitle(), file);
+                    }
+                }
+            }
+            request.setPageToken(fileList.getNextPageToken());
+        } while (!Strings.isNullOrEmpty(request.getPageToken()));
+
+        return files;
+    }
+
+    /**
+     * Retrieves a single page of the files matching the given query.
+     *
+     * @param pageToken null, to get the first page
+     */
+    public FileList retrieveFilesPage(final Drive service, final String query, final String pageToken)
+            throws IOException {
+        return execute(service.files().list()
+                .setQ(query)
+                .setMaxResults(MAX_RESULTS_PER_PAGE)
+                .setPageToken(pageToken));
+    }
+
+    public long retrieveLargestChangeId(final Drive service) throws IOException {
+        return execute(service.about().get()).getLargestChangeId();
+    }
+
+    /**
+     * Walks the changes feed starting right after the given change id;  when
+     * nothing changed, this costs a single request.
+     */
+    public ChangeSet retrieveChangesSince(final Drive service, final long changeId) throws IOException {
+        final Set<String> fileIds = Sets.newHashSet();
+        final Set<String> titles = Sets.newHashSet();
+        long largestChangeId = changeId;
+
+        final Drive.Changes.List request = service.changes().list()
+                .setStartChangeId(changeId + 1)
+                .setIncludeDeleted(true)
+                .setMaxResults(MAX_RESULTS_PER_PAGE);
+        do {
+            final ChangeList changeList = execute(request);
+            if (changeList.getItems() != null) {
+                for (final Change change : changeList.getItems()) {
+                    fileIds.add(change.getFileId());
+                    if (change.getFile() != null) {
+                        titles.add(change.getFile().getTitle());
+                    }
+                }
+            }
+            if (changeList.getLargestChangeId() != null) {
+                largestChangeId = Math.max(largestChangeId, changeList.getLargestChangeId());
+            }
+            request.setPageToken(changeList.getNextPageToken());
+        } while (!Strings.isNullOrEmpty(request.getPageToken()));
+
+        return new ChangeSet(fileIds, titles, largestChangeId);
+    }
+
     public InputStream fetchByTitle(final Drive service, final String title) throws IOException {
         final File file = retrieveFileByTitle(service, title);
         if (file == null) {
@@ -54,7 +170,7 @@ public class GoogleDriveUtils {
             request = service.files().update(file.getId(), file, streamContent);
         }
         request.getMediaHttpUploader().setDirectUploadEnabled(true);
-        request.execute();
+        execute(request);
     }
 
     public void deleteFileByTitle(final Drive service, final String title) throws IOException {
@@ -63,14 +179,101 @@ public class GoogleDriveUtils {
             return;
         }
 
-        service.files().delete(file.getId()).execute();
+        execute(service.files().delete(file.getId()));
     }
 
     public InputStream fetchFileByDownloadUrl(final Drive service, final String downloadUrl) throws IOException {
-        final HttpResponse resp =
-                service.getRequestFactory().buildGetRequest(new GenericUrl(downloadUrl))
-                        .execute();
-        return resp.getContent();
+        final HttpRequest request = service.getRequestFactory().buildGetRequest(new GenericUrl(downloadUrl));
+
+        stats.recordWait(rateLimiter.acquire());
+        try {
+            final HttpResponse resp = request.execute();
+            stats.recordStatus(resp.getStatusCode());
+            rateLimiter.onSuccess();
+            return ContentLengthCheckingInputStream.getContent(resp);
+        } catch (HttpResponseException e) {
+            stats.recordStatus(e.getStatusCode());
+            rateLimiter.onFailure(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Fetches the content at the given URL from the given byte onwards (up to
+     * the given one, if not null);  servers not supporting ranges send the
+     * whole content instead, and so does Drive if the content changed since
+     * the response the given validator was taken from.
+     *
+     * @param validator null, or {@link DownloadResponse#validator} of an
+     *                  earlier response for the same URL
+     */
+    public DownloadResponse fetchRangeByDownloadUrl(final Drive service, final String downloadUrl, final long from,
+                                                    final Long to, final String validator) throws IOException {
+        final HttpRequest request = service.getRequestFactory().buildGetRequest(new GenericUrl(downloadUrl));
+        if (from > 0 || to != null) {
+            request.getHeaders().setRange(String.format("bytes=%d-%s", from, (to != null) ? to : ""));
+            // Offsets refer to the content as stored, not as compressed
+            // for the transfer
+            request.getHeaders().setAcceptEncoding(IDENTITY);
+            if (validator != null) {
+                request.getHeaders().setIfRange(validator);
+            }
+        }
+
+        stats.recordWait(rateLimiter.acquire());
+        final HttpResponse resp;
+        try {
+            resp = request.execute();
+            stats.recordStatus(resp.getStatusCode());
+            rateLimiter.onSuccess();
+        } catch (HttpResponseException e) {
+            stats.recordStatus(e.getStatusCode());
+            rateLimiter.onFailure(e);
+            throw e;
+        }
+
+        final String etag = resp.getHeaders().getETag();
+        final String responseValidator = (etag != null) ? etag : resp.getHeaders().getLastModified();
+        final InputStream content = ContentLengthCheckingInputStream.getContent(resp);
+        if (resp.getStatusCode() == HTTP_PARTIAL_CONTENT) {
+            final Matcher matcher = CONTENT_RANGE.matcher(Strings.nullToEmpty(resp.getHeaders().getContentRange()));
+            if (matcher.matches()) {
+                final Long size = "*".equals(matcher.group(2)) ? null : Long.valueOf(matcher.group(2));
+                return new DownloadResponse(
+                        content, Long.parseLong(matcher.group(1)), size, true, responseValidator, resp);
+            }
+            resp.disconnect();
+            throw new IOException(String.format(
+                    "Unexpected Content-Range: '%s'", resp.getHeaders().getContentRange()));
+        }
+        final Long size = (resp.getContentEncoding() == null) ? resp.getHeaders().getContentLength() : null;
+        final boolean rangesSupported =
+                BYTES.equalsIgnoreCase(resp.getHeaders().getFirstHeaderStringValue(ACCEPT_RANGES));
+        return new DownloadResponse(content, 0, size, rangesSupported, responseValidator, resp);
     }
 
+    private <T> T execute(final DriveRequest<T> request) throws IOException {
+        stats.recordWait(rateLimiter.acquire());
+        try {
+            final HttpResponse response = request.executeUnparsed();
+            stats.recordStatus(response.getStatusCode());
+            rateLimiter.onSuccess();
+            return response.parseAs(request.getResponseClass());
+        } catch (HttpResponseException e) {
+            stats.recordStatus(e.getStatusCode());
+            rateLimiter.onFailure(e);
+            throw e;
+        }
+    }
+
+    private static String getTitleClause(final String title) {
+        return String.format("title = %s", quote(title));
+    }
+
+    /**
+     * Quotes the given value as a string literal of the Drive query language.
+     */
+    public static String quote(final String value) {
+        return String.format("'%s'", value.replace("\\", "\\\\").replace("'", "\\'"));
+    }
 }
@@ -0,0 +1,201 @@
+package net.matteolandi.plugins.livedocumentationfetcher.googledrive;
+
+import com.google.api.client.auth.oauth2.Credential;
+import com.google.api.client.auth.oauth2.CredentialStore;
+import com.google.common.base.Supplier;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.jackson.map.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Credential store keeping a copy of the credentials on the local file system
+ * (readable by the owner only), in front of a slower, remote one:  the remote
+ * store is only hit when the local copy is missing, or expired and without a
+ * refresh token (an expired access token is refreshed by the credential
+ * itself, which then stores it back), while updates are written to the local
+ * copy first and propagated to the remote store in background.
+ */
+public class LocalCachingCredentialStore implements CredentialStore {
+    private static final long EXPIRATION_MARGIN_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final long FLUSH_TIMEOUT_SECONDS = 30;
+    private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rw-------");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Log log;
+    private final java.io.File cacheDirectory;
+    private final String cacheKey;
+    private final Supplier<? extends CredentialStore> remoteStoreSupplier;
+    private final ExecutorService writeBehindExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("credential-store-write-behind").setDaemon(true).build());
+
+    /**
+     * @param cacheKey            distinguishes credentials released to different
+     *                            applications/accounts sharing the same directory
+     * @param remoteStoreSupplier invoked the first time the remote store is
+     *                            needed (i.e. lazily)
+     */
+    public LocalCachingCredentialStore(final Log log, final java.io.File cacheDirectory, final String cacheKey,
+                                       final Supplier<? extends CredentialStore> remoteStoreSupplier) {
+        this.log = log;
+        this.cacheDirectory = cacheDirectory;
+        this.cacheKey = cacheKey;
+        this.remoteStoreSupplier = remoteStoreSupplier;
+    }
+
+    @Override
+    public boolean load(final String userId, final Credential credential) throws IOException {
+        final GoogleDriveBasedCredentialStore.StoredCredential storedCredential = readLocal(userId);
+        if (storedCredential != null && (!isExpired(storedCredential) || storedCredential.refreshToken != null)) {
+            setCredential(credential, storedCredential);
+            log.debug(String.format("Loaded cached credentials for user '%s'", userId));
+            return true;
+        }
+
+        if (!getRemoteStore().load(userId, credential)) {
+            return false;
+        }
+        writeLocal(userId, toStoredCredential(credential));
+        return true;
+    }
+
+    @Override
+    public void store(final String userId, final Credential credential) throws IOException {
+        writeLocal(userId, toStoredCredential(credential));
+
+        writeBehindExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    getRemoteStore().store(userId, credential);
+                } catch (IOException e) {
+                    log.warn(String.format("Cannot store credentials for user '%s': %s", userId, e.getMessage()), e);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void delete(final String userId, final Credential credential) throws IOException {
+        Files.deleteIfExists(getLocalPath(userId));
+        getRemoteStore().delete(userId, credential);
+    }
+
+    /**
+     * Waits for pending updates to be propagated to the remote store.
+     */
+    public void flush() {
+        final Future<?> barrier = writeBehindExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                // Completes once all the updates submitted before it have been stored
+            }
+        });
+        try {
+            barrier.get(FLUSH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            log.warn("Timed out while waiting for credentials to be stored");
+        } catch (ExecutionException e) {
+            throw new AssertionError(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private CredentialStore getRemoteStore() throws IOException {
+        try {
+            return remoteStoreSupplier.get();
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private GoogleDriveBasedCredentialStore.StoredCredential readLocal(final String userId) {
+        final Path path = getLocalPath(userId);
+        if (!Files.exists(path)) {
+            return null;
+        }
+
+        try {
+            return objectMapper.readValue(path.toFile(), GoogleDriveBasedCredentialStore.StoredCredential.class);
+        } catch (IOException e) {
+            log.warn(String.format("Cannot read cached credentials for user '%s': %s", userId, e.getMessage()));
+            return null;
+        }
+    }
+
+    private void writeLocal(final String userId, final GoogleDriveBasedCredentialStore.StoredCredential credential) {
+        try {
+            Files.createDirectories(cacheDirectory.toPath());
+            final Path path = getLocalPath(userId);
+            final Path temp = Files.createTempFile(cacheDirectory.toPath(), userId, ".tmp");
+            try {
+                restrictToOwner(temp);
+                objectMapper.writeValue(temp.toFile(), credential);
+                try {
+                    Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            log.warn(String.format("Cannot cache credentials for user '%s': %s", userId, e.getMessage()));
+        }
+    }
+
+    private static void restrictToOwner(final Path path) throws IOException {
+        try {
+            Files.setPosixFilePermissions(path, OWNER_ONLY);
+        } catch (UnsupportedOperationException e) {
+            final java.io.File file = path.toFile();
+            file.setReadable(false, false);
+            file.setWritable(false, false);
+            file.setReadable(true, true);
+            file.setWritable(true, true);
+        }
+    }
+
+    private Path getLocalPath(final String userId) {
+        return new java.io.File(cacheDirectory, String.format("%s-%s.json", cacheKey, userId)).toPath();
+    }
+
+    private static boolean isExpired(final GoogleDriveBasedCredentialStore.StoredCredential credential) {
+        return credential.expirationTimeMilliseconds - EXPIRATION_MARGIN_MILLIS < System.currentTimeMillis();
+    }
+
+    private static void setCredential(final Credential credential,
+                                      final GoogleDriveBasedCredentialStore.StoredCredential storedCredential) {
+        credential.setAccessToken(storedCredential.accessToken);
+        credential.setRefreshToken(storedCredential.refreshToken);
+        credential.setExpirationTimeMilliseconds(storedCredential.expirationTimeMilliseconds);
+    }
+
+    private static GoogleDriveBasedCredentialStore.StoredCredential toStoredCredential(final Credential credential) {
+        final GoogleDriveBasedCredentialStore.StoredCredential storedCredential =
+                new GoogleDriveBasedCredentialStore.StoredCredential();
+        storedCredential.accessToken = credential.getAccessToken();
+        storedCredential.refreshToken = credential.getRefreshToken();
+        storedCredential.expirationTimeMilliseconds =
+                (credential.getExpirationTimeMilliseconds() != null) ? credential.getExpirationTimeMilliseconds() : 0;
+        return storedCredential;
+    }
+}
@@ -0,0 +1,32 @@
+package net.matteolandi.plugins.livedocumentationfetcher.http;
+
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestInitializer;
+
+import java.io.IOException;
+
+/**
+ * Applies the configured timeouts to every request, after delegating to the
+ * given initializer (e.g. the one adding credentials).
+ */
+public class ConfiguringHttpRequestInitializer implements HttpRequestInitializer {
+    private static final String GZIP = "gzip";
+
+    private final HttpRequestInitializer delegate;
+    private final HttpSettings settings;
+
+    public ConfiguringHttpRequestInitializer(final HttpRequestInitializer delegate, final HttpSettings settings) {
+        this.delegate = delegate;
+        this.settings = settings;
+    }
+
+    @Override
+    public void initialize(final HttpRequest request) throws IOException {
+        if (delegate != null) {
+            delegate.initialize(request);
+        }
+        request.setConnectTimeout(settings.connectTimeoutMillis);
+        request.setReadTimeout(settings.readTimeoutMillis);
+        request.getHeaders().setAcceptEncoding(GZIP);
+    }
+}
@@ -0,0 +1,80 @@
+package net.matteolandi.plugins.livedocumentationfetcher.http;
+
+import com.google.api.client.http.HttpResponse;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Fails, instead of silently ending, when the connection is closed before all
+ * the bytes announced by Content-Length were received (the Apache transport
+ * reports that as a regular end of stream, which would leave a truncated
+ * document behind).
+ */
+public class ContentLengthCheckingInputStream extends FilterInputStream {
+    private final HttpResponse response;
+    private final long expected;
+    private long received;
+
+    private ContentLengthCheckingInputStream(final InputStream in, final HttpResponse response,
+                                             final long expected) {
+        super(in);
+        this.response = response;
+        this.expected = expected;
+    }
+
+    /**
+     * Returns the content of the given response, checked against its
+     * Content-Length (compressed contents are already checked while being
+     * decompressed).
+     */
+    public static InputStream getContent(final HttpResponse response) throws IOException {
+        final InputStream content = response.getContent();
+        final Long contentLength = response.getHeaders().getContentLength();
+        if (content == null || contentLength == null || response.getContentEncoding() != null) {
+            return content;
+        }
+        return new ContentLengthCheckingInputStream(content, response, contentLength);
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int b = super.read();
+        if (b == -1) {
+            checkLength();
+        } else {
+            received++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        final int count = super.read(b, off, len);
+        if (count == -1) {
+            checkLength();
+        } else {
+            received += count;
+        }
+        return count;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        final long skipped = super.skip(n);
+        received += skipped;
+        return skipped;
+    }
+
+    private void checkLength() throws IOException {
+        if (received < expected) {
+            // The connection was closed by the server:  make sure it is not
+            // handed out again by the pool
+            response.disconnect();
+            throw new EOFException(String.format(
+                    "Connection closed after %d of %d bytes", received, expected));
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package net.matteolandi.plugins.livedocumentationfetcher.http;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.util.List;
+
+public final class HttpSettings {
+    public static final String APACHE_TRANSPORT = "apache";
+    public static final String NET_TRANSPORT = "net";
+
+    public static final List<String> TRANSPORTS = ImmutableList.of(APACHE_TRANSPORT, NET_TRANSPORT);
+
+    /**
+     * Either "apache" (pooled, keep-alive connections) or "net" (plain
+     * java.net.HttpURLConnection).
+     */
+    @Parameter
+    public String transport = APACHE_TRANSPORT;
+
+    /**
+     * Maximum number of pooled connections;  should not be lower than the
+     * number of concurrent downloads.
+     */
+    @Parameter
+    public int maxConnections = 20;
+
+    @Parameter
+    public int connectTimeoutMillis = 20000;
+
+    @Parameter
+    public int readTimeoutMillis = 20000;
+
+    @Override
+    public String toString() {
+        return "HttpSettings{" +
+                "transport='" + transport + '\'' +
+                ", maxConnections=" + maxConnections +
+                ", connectTimeoutMillis=" + connectTimeoutMillis +
+                ", readTimeoutMillis=" + readTimeoutMillis +
+                '}';
+    }
+}
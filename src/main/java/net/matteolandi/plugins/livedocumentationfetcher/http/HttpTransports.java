@@ -0,0 +1,37 @@
+package net.matteolandi.plugins.livedocumentationfetcher.http;
+
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.apache.ApacheHttpTransport;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+
+public final class HttpTransports {
+    private HttpTransports() {
+    }
+
+    public static HttpTransport create(final HttpSettings settings) {
+        if (HttpSettings.NET_TRANSPORT.equals(settings.transport)) {
+            return new NetHttpTransport();
+        }
+        if (!HttpSettings.APACHE_TRANSPORT.equals(settings.transport)) {
+            throw new IllegalArgumentException(String.format("Unknown HTTP transport: '%s'", settings.transport));
+        }
+
+        final ApacheHttpTransport.Builder builder = new ApacheHttpTransport.Builder();
+        final HttpParams params = builder.getHttpParams();
+        // All the requests go to the same couple of hosts, hence the per-route
+        // limit has to match the overall one for the pool to be of any use
+        ConnManagerParams.setMaxTotalConnections(params, settings.maxConnections);
+        ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(settings.maxConnections));
+        HttpConnectionParams.setConnectionTimeout(params, settings.connectTimeoutMillis);
+        HttpConnectionParams.setSoTimeout(params, settings.readTimeoutMillis);
+        // Disabled by default:  without it, a connection closed by the server
+        // halfway through a response is handed out again, and the request
+        // sent over it fails (no retries happen at this level)
+        HttpConnectionParams.setStaleCheckingEnabled(params, true);
+        return builder.build();
+    }
+}
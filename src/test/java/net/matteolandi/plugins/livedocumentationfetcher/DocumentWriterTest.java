@@ -0,0 +1,43 @@
+package net.matteolandi.plugins.livedocumentationfetcher;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class DocumentWriterTest {
+    private final DocumentWriter documentWriter = new DocumentWriter(4096, false);
+
+    private File destination;
+
+    @Before
+    public void setUp() throws IOException {
+        destination = new File(Files.createTempDir(), "document.html");
+        Files.write("stale", destination, Charsets.UTF_8);
+    }
+
+    @Test
+    public void leavesDestinationsUntouchedOnceClosed() throws IOException {
+        final File part = documentWriter.createPart(destination);
+        Files.write("refreshed", part, Charsets.UTF_8);
+
+        documentWriter.close();
+        try {
+            documentWriter.commit(part, destination);
+            fail("Expected the commit to be refused");
+        } catch (CancellationException expected) {
+            // Refused
+        }
+
+        assertEquals("stale", Files.toString(destination, Charsets.UTF_8));
+        assertFalse(part.exists());
+    }
+}
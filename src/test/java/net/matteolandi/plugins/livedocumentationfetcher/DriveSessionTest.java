@@ -0,0 +1,59 @@
+package net.matteolandi.plugins.livedocumentationfetcher;
+
+import net.matteolandi.plugins.livedocumentationfetcher.googledrive.GoogleDriveService;
+import org.junit.Test;
+import rx.Observable;
+import rx.Subscriber;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class DriveSessionTest {
+    private final DriveSession session = new DriveSession(null, null, null, null);
+
+    @Test
+    public void sharesSetUpInProgress() {
+        final AtomicInteger setUps = new AtomicInteger();
+        final Observable<GoogleDriveService> setUp = countingSetUp(setUps, false);
+
+        final Observable<GoogleDriveService> first = session.getGoogleDriveService(setUp);
+        final Observable<GoogleDriveService> second = session.getGoogleDriveService(setUp);
+        final GoogleDriveService service = first.toBlocking().single();
+
+        assertSame(service, second.toBlocking().single());
+        assertSame(service, session.getGoogleDriveService(setUp).toBlocking().single());
+        assertEquals(1, setUps.get());
+    }
+
+    @Test
+    public void retriesFailedSetUp() {
+        final AtomicInteger setUps = new AtomicInteger();
+
+        try {
+            session.getGoogleDriveService(countingSetUp(setUps, true)).toBlocking().single();
+        } catch (RuntimeException expected) {
+            // Reported to the execution that asked for it
+        }
+        session.getGoogleDriveService(countingSetUp(setUps, false)).toBlocking().single();
+
+        assertEquals(2, setUps.get());
+    }
+
+    private static Observable<GoogleDriveService> countingSetUp(final AtomicInteger setUps, final boolean fail) {
+        return Observable.create(new Observable.OnSubscribe<GoogleDriveService>() {
+            @Override
+            public void call(Subscriber<? super GoogleDriveService> s) {
+                setUps.incrementAndGet();
+                if (fail) {
+                    s.onError(new IOException("Cannot set up"));
+                    return;
+                }
+                s.onNext(new GoogleDriveService(null, null));
+                s.onCompleted();
+            }
+        });
+    }
+}
@@ -0,0 +1,188 @@
+package net.matteolandi.plugins.livedocumentationfetcher;
+
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import rx.Observable;
+import rx.schedulers.Schedulers;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HtmlPostProcessorTest {
+    private static final String IMAGE_SOURCE = "https://*.googleusercontent.com/";
+    private static final String IMAGE_URL = "https://lh3.googleusercontent.com/a.png";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Log log = new SystemStreamLog();
+    private final List<String> requested = new CopyOnWriteArrayList<String>();
+    private final HttpTransport transport = new MockHttpTransport() {
+        @Override
+        public LowLevelHttpRequest buildRequest(final String method, final String url) throws IOException {
+            requested.add(url);
+            return new MockLowLevelHttpRequest(url).setResponse(new MockLowLevelHttpResponse().setContent("png"));
+        }
+    };
+
+    private DocumentWriter documentWriter;
+    private ImageLocalizer imageLocalizer;
+    private File destination;
+
+    @Before
+    public void setUp() throws IOException {
+        documentWriter = new DocumentWriter(4096, false);
+        imageLocalizer = new ImageLocalizer(log, transport.createRequestFactory(), ImmutableList.of(IMAGE_SOURCE),
+                Schedulers.immediate(), new RetryPolicy(log, new RetrySettings(), new FetchMetrics()),
+                documentWriter, new File(folder.getRoot(), "images"));
+        destination = new File(folder.newFolder("docs"), "doc.html");
+    }
+
+    @Test
+    public void copiesCommentsAndDoctypesVerbatim() throws IOException {
+        final String html = "<!DOCTYPE html><html><!-- <style>a { color : red ; }</style> -->"
+                + "<!-- <img src=\"" + IMAGE_URL + "\"> --><!--->--></html>";
+
+        assertEquals(html, process(html, PostProcessingSettings.MINIFY_STYLES));
+        assertTrue(requested.isEmpty());
+    }
+
+    @Test
+    public void copiesStrayBracketsVerbatim() throws IOException {
+        final String html = "<p>1 < 2 and 3 <= 4 <</p>";
+
+        assertEquals(html, process(html, PostProcessingSettings.MINIFY_STYLES));
+    }
+
+    @Test
+    public void skipsQuotedBracketsInsideAttributes() throws IOException {
+        final String html = "<img alt=\"a > b\" title='c > d' src=\"" + IMAGE_URL + "\"><p>e</p>";
+
+        assertEquals("<img alt=\"a > b\" title='c > d' src=\"" + getLocalPath(IMAGE_URL) + "\"><p>e</p>",
+                process(html, PostProcessingSettings.KEEP_STYLES));
+    }
+
+    @Test
+    public void recognizesClosingStyleTagsInAnyCaseAndWithWhitespace() throws IOException {
+        final String html = "<STYLE type=\"text/css\">p { color : red ; }</STYLE ><p>text</p>";
+
+        assertEquals("<STYLE type=\"text/css\">p{color :red}</STYLE ><p>text</p>",
+                process(html, PostProcessingSettings.MINIFY_STYLES));
+        assertEquals("<p>text</p>", process(html, PostProcessingSettings.STRIP_STYLES));
+        assertEquals(html, process(html, PostProcessingSettings.KEEP_STYLES));
+    }
+
+    @Test
+    public void leavesScriptsUntouched() throws IOException {
+        final String html = "<script>if (a < b && c > d) { x = '<style>'; }</script><style>p { }</style>";
+
+        assertEquals("<script>if (a < b && c > d) { x = '<style>'; }</script>",
+                process(html, PostProcessingSettings.STRIP_STYLES));
+    }
+
+    @Test
+    public void localizesSrcOnly() throws IOException {
+        final String html = "<img data-src=\"https://lh3.googleusercontent.com/b.png\" "
+                + "srcset=\"https://lh3.googleusercontent.com/c.png 2x\" SRC = '" + IMAGE_URL + "'>";
+
+        assertEquals("<img data-src=\"https://lh3.googleusercontent.com/b.png\" "
+                        + "srcset=\"https://lh3.googleusercontent.com/c.png 2x\" SRC = \"" + getLocalPath(IMAGE_URL)
+                        + "\">",
+                process(html, PostProcessingSettings.KEEP_STYLES));
+        assertEquals(ImmutableList.of(IMAGE_URL), requested);
+    }
+
+    @Test
+    public void looksForSrcOutsideOfOtherAttributeValues() throws IOException {
+        final String html = "<img alt=\"x src=y\" title='src=\"" + IMAGE_URL + "\"' src=" + IMAGE_URL + " />"
+                + "<img alt=\" src='" + IMAGE_URL + "'\">";
+
+        assertEquals("<img alt=\"x src=y\" title='src=\"" + IMAGE_URL + "\"' src=\"" + getLocalPath(IMAGE_URL)
+                        + "\" /><img alt=\" src='" + IMAGE_URL + "'\">",
+                process(html, PostProcessingSettings.KEEP_STYLES));
+        assertEquals(ImmutableList.of(IMAGE_URL), requested);
+    }
+
+    @Test
+    public void unescapesAmpersandsInImageUrls() throws IOException {
+        final String html = "<img src=\"" + IMAGE_URL + "?w=1&amp;h=1\">";
+
+        assertEquals("<img src=\"" + getLocalPath(IMAGE_URL + "?w=1&h=1") + "\">",
+                process(html, PostProcessingSettings.KEEP_STYLES));
+        assertEquals(ImmutableList.of(IMAGE_URL + "?w=1&h=1"), requested);
+        assertTrue(imageLocalizer.getFile(IMAGE_URL + "?w=1&h=1").isFile());
+    }
+
+    @Test
+    public void leavesImagesFromOtherSourcesUntouched() throws IOException {
+        final String html = "<img src=\"http://lh3.googleusercontent.com/a.png\">"
+                + "<img src=\"https://example.com/a.png\"><img src=\"https://googleusercontent.com.example.com/a.png\">"
+                + "<img src=\"images/a.png\"><img src=\"data:image/png;base64,AAAA\">";
+
+        assertEquals(html, process(html, PostProcessingSettings.KEEP_STYLES));
+        assertTrue(requested.isEmpty());
+    }
+
+    @Test
+    public void minifyDropsCommentsAndWhitespaceAroundPunctuation() {
+        assertEquals("a,b>c{color:red;margin:0}",
+                HtmlPostProcessor.minify("/* comment */\n a ,\n b > c {\n  color: red;\n  margin: 0;\n}\n"));
+        assertEquals("p{}", HtmlPostProcessor.minify("p { ; }"));
+    }
+
+    @Test
+    public void minifyKeepsWhitespaceBetweenValuesAndSelectors() {
+        assertEquals("div p{margin:0 auto;font:12px/1.5 Arial,sans-serif}",
+                HtmlPostProcessor.minify("div  p {\n margin: 0   auto;\n font: 12px/1.5 Arial, sans-serif; }"));
+        // Kept before a colon, where it is meaningful in selectors (a descendant pseudo-class), and
+        // harmless in declarations
+        assertEquals("a :hover{color :red}", HtmlPostProcessor.minify("a :hover { color : red }"));
+    }
+
+    @Test
+    public void minifyKeepsStringsAsTheyAre() {
+        assertEquals("p:after{content:\"a  /* b */  ;}\"}",
+                HtmlPostProcessor.minify("p:after { content: \"a  /* b */  ;}\" ; }"));
+        assertEquals("p{font-family:'Times  New'}", HtmlPostProcessor.minify("p { font-family: 'Times  New' }"));
+    }
+
+    private String process(final String html, final String styles) throws IOException {
+        final File source = folder.newFile();
+        Files.write(html, source, Charsets.UTF_8);
+        final PostProcessingSettings settings = new PostProcessingSettings();
+        settings.styles = styles;
+        settings.localizeImages = true;
+
+        final List<Observable<File>> images = Lists.newArrayList();
+        final File part = new HtmlPostProcessor(documentWriter, settings, imageLocalizer)
+                .process(source, destination, images);
+        try {
+            Observable.merge(images).toBlocking().lastOrDefault(null);
+            return Files.toString(part, Charsets.UTF_8);
+        } finally {
+            assertTrue(part.delete());
+        }
+    }
+
+    private String getLocalPath(final String url) {
+        return "../images/" + imageLocalizer.getFile(url).getName();
+    }
+}
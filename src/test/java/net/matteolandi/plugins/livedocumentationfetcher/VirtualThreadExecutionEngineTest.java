@@ -0,0 +1,104 @@
+package net.matteolandi.plugins.livedocumentationfetcher;
+
+import com.google.common.collect.Lists;
+import org.junit.After;
+import org.junit.Test;
+import rx.Scheduler;
+import rx.functions.Action0;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs with platform threads, the permits being handed out the same way.
+ */
+public class VirtualThreadExecutionEngineTest {
+    private VirtualThreadExecutionEngine executionEngine;
+
+    @After
+    public void tearDown() {
+        executionEngine.close();
+    }
+
+    @Test
+    public void startsDownloadsInSubmissionOrder() throws InterruptedException {
+        executionEngine = new VirtualThreadExecutionEngine(Executors.defaultThreadFactory(), 1, false);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final List<Integer> started = new CopyOnWriteArrayList<Integer>();
+        final int downloads = 50;
+        final CountDownLatch done = new CountDownLatch(downloads + 1);
+
+        schedule(executionEngine.getDownloadScheduler(), new Action0() {
+            @Override
+            public void call() {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }
+        });
+        final List<Integer> expected = Lists.newArrayList();
+        for (int i = 0; i < downloads; i++) {
+            final int index = i;
+            expected.add(index);
+            schedule(executionEngine.getDownloadScheduler(), new Action0() {
+                @Override
+                public void call() {
+                    started.add(index);
+                    done.countDown();
+                }
+            });
+        }
+        blocked.countDown();
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(expected, started);
+    }
+
+    @Test
+    public void runsAtMostMaxConcurrentDownloads() throws InterruptedException {
+        final int maxConcurrentDownloads = 4;
+        executionEngine = new VirtualThreadExecutionEngine(Executors.defaultThreadFactory(), maxConcurrentDownloads,
+                false);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final int downloads = 200;
+        final CountDownLatch done = new CountDownLatch(downloads);
+
+        for (int i = 0; i < downloads; i++) {
+            schedule(executionEngine.getDownloadScheduler(), new Action0() {
+                @Override
+                public void call() {
+                    final int current = running.incrementAndGet();
+                    while (true) {
+                        final int max = maxRunning.get();
+                        if (current <= max || maxRunning.compareAndSet(max, current)) {
+                            break;
+                        }
+                    }
+                    Thread.yield();
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(String.format("%d downloads ran at once", maxRunning.get()),
+                maxRunning.get() <= maxConcurrentDownloads);
+    }
+
+    private static void schedule(final Scheduler scheduler, final Action0 action) {
+        scheduler.createWorker().schedule(action);
+    }
+}
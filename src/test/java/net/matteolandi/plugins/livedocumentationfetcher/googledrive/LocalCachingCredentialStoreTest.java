@@ -0,0 +1,123 @@
+package net.matteolandi.plugins.livedocumentationfetcher.googledrive;
+
+import com.google.api.client.auth.oauth2.Credential;
+import com.google.api.client.auth.oauth2.CredentialStore;
+import com.google.api.client.auth.oauth2.CredentialStoreRefreshListener;
+import com.google.api.client.auth.oauth2.TokenResponse;
+import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.common.base.Supplier;
+import com.google.common.io.Files;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LocalCachingCredentialStoreTest {
+    private static final String USER_ID = "service";
+
+    private File cacheDirectory;
+    private CountingCredentialStore remoteStore;
+
+    @Before
+    public void setUp() {
+        cacheDirectory = Files.createTempDir();
+        remoteStore = new CountingCredentialStore();
+    }
+
+    @Test
+    public void nextBuildUsesRefreshedTokenWithoutHittingRemoteStore() throws IOException {
+        final LocalCachingCredentialStore firstBuild = newStore();
+        final Credential credential = newCredential();
+        credential.setAccessToken("first");
+        credential.setRefreshToken("refresh");
+        credential.setExpirationTimeMilliseconds(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1));
+        firstBuild.store(USER_ID, credential);
+
+        credential.setAccessToken("refreshed");
+        new CredentialStoreRefreshListener(USER_ID, firstBuild).onTokenResponse(credential, new TokenResponse());
+        firstBuild.flush();
+        assertEquals(2, remoteStore.stores.get());
+
+        final Credential loaded = newCredential();
+        assertTrue(newStore().load(USER_ID, loaded));
+        assertEquals("refreshed", loaded.getAccessToken());
+        assertEquals(0, remoteStore.loads.get());
+    }
+
+    @Test
+    public void servesExpiredCredentialsWithRefreshToken() throws IOException {
+        final Credential credential = newCredential();
+        credential.setAccessToken("expired");
+        credential.setRefreshToken("refresh");
+        credential.setExpirationTimeMilliseconds(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1));
+        final LocalCachingCredentialStore firstBuild = newStore();
+        firstBuild.store(USER_ID, credential);
+        firstBuild.flush();
+
+        final Credential loaded = newCredential();
+        assertTrue(newStore().load(USER_ID, loaded));
+        assertEquals("refresh", loaded.getRefreshToken());
+        assertEquals(0, remoteStore.loads.get());
+    }
+
+    @Test
+    public void fallsBackToRemoteStoreWhenExpiredWithoutRefreshToken() throws IOException {
+        final Credential credential = newCredential();
+        credential.setAccessToken("expired");
+        credential.setExpirationTimeMilliseconds(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1));
+        final LocalCachingCredentialStore firstBuild = newStore();
+        firstBuild.store(USER_ID, credential);
+        firstBuild.flush();
+
+        newStore().load(USER_ID, newCredential());
+        assertEquals(1, remoteStore.loads.get());
+    }
+
+    private LocalCachingCredentialStore newStore() {
+        return new LocalCachingCredentialStore(new SystemStreamLog(), cacheDirectory, "test",
+                new Supplier<CredentialStore>() {
+                    @Override
+                    public CredentialStore get() {
+                        return remoteStore;
+                    }
+                });
+    }
+
+    private static Credential newCredential() {
+        return new GoogleCredential.Builder()
+                .setTransport(new NetHttpTransport())
+                .setJsonFactory(new JacksonFactory())
+                .setClientSecrets("client-id", "client-secret")
+                .setTokenServerEncodedUrl("http://localhost/token")
+                .build();
+    }
+
+    private static class CountingCredentialStore implements CredentialStore {
+        final AtomicInteger loads = new AtomicInteger();
+        final AtomicInteger stores = new AtomicInteger();
+
+        @Override
+        public boolean load(final String userId, final Credential credential) {
+            loads.incrementAndGet();
+            return false;
+        }
+
+        @Override
+        public void store(final String userId, final Credential credential) {
+            stores.incrementAndGet();
+        }
+
+        @Override
+        public void delete(final String userId, final Credential credential) {
+        }
+    }
+}